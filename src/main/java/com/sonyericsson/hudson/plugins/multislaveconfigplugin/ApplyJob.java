@@ -0,0 +1,220 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import net.sf.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies settings to a list of nodes in the background.
+ * The changed nodes are built in parallel, see {@link NodeJob}, and are then registered in Jenkins all at once,
+ * see {@link JenkinsNodes#replace(java.util.Collection)}.
+ * Registered nodes whose configuration the settings don't change are not replaced at all.
+ * New nodes from the create slaves page are added instead, see {@link JenkinsNodes#add(java.util.Collection)}, and
+ * each of them that can't be added is reported as a failure.
+ * A node that has been deleted since it was selected isn't added back, it is reported as a failure as well.
+ * When finished, the changed nodes and the settings are published to the {@link SessionState} that started the job.
+ */
+public class ApplyJob extends NodeJob {
+
+    private static final Logger logger = Logger.getLogger(ApplyJob.class.getName());
+
+    private final HashMap settings;
+    private final SessionState state;
+    private final boolean create;
+    private final Node[] changedNodes;
+    private final Set<Node> registered;
+    private final AtomicInteger changed = new AtomicInteger();
+    private final AtomicInteger unchanged = new AtomicInteger();
+    private volatile NodeList result;
+
+    /**
+     * Standard constructor.
+     * @param nodes the nodes to change.
+     * @param settings the settings to apply, see {@link NodeList#interpretJSON(net.sf.json.JSONObject)}.
+     * @param state the session state to publish the result to when finished, might be null.
+     */
+    public ApplyJob(NodeList nodes, HashMap settings, SessionState state) {
+        this(nodes, settings, state, false);
+    }
+
+    /**
+     * Constructor for applying settings to new nodes.
+     * @param nodes the nodes to change.
+     * @param settings the settings to apply, see {@link NodeList#interpretJSON(net.sf.json.JSONObject)}.
+     * @param state the session state to publish the result to when finished, might be null.
+     * @param create true if the nodes are new and should be added to Jenkins rather than replace registered ones.
+     */
+    public ApplyJob(NodeList nodes, HashMap settings, SessionState state, boolean create) {
+        super(nodes);
+        this.settings = settings;
+        this.state = state;
+        this.create = create;
+        this.changedNodes = new Node[nodes.size()];
+        this.registered = JenkinsNodes.getRegistered();
+    }
+
+    @Override
+    protected void process(int index, Node node) {
+        changedNodes[index] = nodes.changeSettings(node, settings);
+        if (isUnchanged(index)) {
+            unchanged.incrementAndGet();
+        } else {
+            changed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Checks if a node was left as it was, and doesn't need to be registered again.
+     * Nodes that aren't registered, like new nodes that are being added, always need to be registered.
+     * @param i the index of the node.
+     * @return true if the node is registered and the settings didn't change it.
+     */
+    private boolean isUnchanged(int i) {
+        Node node = nodes.get(i);
+        return changedNodes[i] == node && registered.contains(node);
+    }
+
+    /**
+     * Registers the changed nodes in Jenkins and publishes the result.
+     */
+    @Override
+    protected void finish() {
+        NodeList resultNodes = new NodeList();
+        NodeList unchangedNodes = new NodeList();
+        List<Node> replacedNodes = new ArrayList<Node>();
+        for (int i = 0; i < changedNodes.length; i++) {
+            Node node = changedNodes[i];
+            if (node != null) {
+                resultNodes.add(node);
+                if (isUnchanged(i)) {
+                    unchangedNodes.add(node);
+                } else {
+                    replacedNodes.add(node);
+                }
+            }
+        }
+        if (create) {
+            CreationResult added = JenkinsNodes.add(replacedNodes);
+            for (String name : added.getExisting()) {
+                addFailure(Messages.SlaveAlreadyExist(name), 1);
+            }
+            for (Map.Entry<String, String> failure : added.getFailures().entrySet()) {
+                logger.log(Level.WARNING, "Failed to add slave {0}: {1}",
+                        new Object[]{failure.getKey(), failure.getValue()});
+                addFailure(failure.getKey() + ": " + failure.getValue(), 1);
+            }
+            changed.addAndGet(added.getCreated().size() - replacedNodes.size());
+            unchangedNodes.addAll(added.getCreated());
+            resultNodes = unchangedNodes;
+        } else {
+            try {
+                List<String> missing = JenkinsNodes.replace(replacedNodes);
+                for (String name : missing) {
+                    addFailure(Messages.SlaveNoLongerExists(name), 1);
+                }
+                changed.addAndGet(-missing.size());
+                resultNodes.removeAll(withNames(replacedNodes, missing));
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Failed to edit nodelist!", e);
+                addFailure(Messages.FailedToEditNodeList(), changed.getAndSet(0));
+                resultNodes = unchangedNodes;
+            }
+        }
+        result = resultNodes;
+        if (state != null) {
+            state.setNodeList(resultNodes);
+            state.setLastChangedSettings(settings);
+        }
+    }
+
+    /**
+     * Picks the nodes with some names.
+     * @param nodes the nodes to pick from.
+     * @param names the names.
+     * @return the nodes with the names.
+     */
+    private static List<Node> withNames(List<Node> nodes, List<String> names) {
+        List<Node> picked = new ArrayList<Node>(names.size());
+        if (names.isEmpty()) {
+            return picked;
+        }
+        Set<String> nameSet = new HashSet<String>(names);
+        for (Node node : nodes) {
+            if (nameSet.contains(node.getNodeName())) {
+                picked.add(node);
+            }
+        }
+        return picked;
+    }
+
+    /**
+     * The number of nodes changed so far.
+     * @return the count.
+     */
+    public int getChanged() {
+        return changed.get();
+    }
+
+    /**
+     * The number of nodes so far that the settings didn't change, and that were left as they were.
+     * @return the count.
+     */
+    public int getUnchanged() {
+        return unchanged.get();
+    }
+
+    /**
+     * The changed nodes, together with the nodes that didn't need to be changed.
+     * @return the nodes, or null if the job hasn't finished.
+     */
+    public NodeList getResult() {
+        return result;
+    }
+
+    /**
+     * The progress of the job for the progress page.
+     * @return JSONObject with total, done, changed, unchanged, failed, failures and finished.
+     */
+    @Override
+    public JSONObject getProgress() {
+        JSONObject progress = super.getProgress();
+        progress.put("changed", getChanged());
+        progress.put("unchanged", getUnchanged());
+        return progress;
+    }
+}
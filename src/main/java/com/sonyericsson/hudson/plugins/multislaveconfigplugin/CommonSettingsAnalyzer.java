@@ -0,0 +1,180 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Works out the common value of every {@link Setting} of a list of slaves in one pass over the slaves.
+ * A setting is common if it is the same on all DumbSlaves, either exactly or when the slave names are switched
+ * to environment variables, e.g. "/home/slave1" and "/home/slave2" are both "/home/$NAME".
+ * The exact and the environment variable comparisons are tracked side by side for all settings,
+ * and a setting is no longer looked at once both have failed.
+ */
+public final class CommonSettingsAnalyzer {
+
+    private static final Setting[] SETTINGS = Setting.values();
+
+    private final String[] firstValues = new String[SETTINGS.length];
+    private final String[] firstEnvironmentValues = new String[SETTINGS.length];
+    private final boolean[] exactSame = new boolean[SETTINGS.length];
+    private final boolean[] environmentSame = new boolean[SETTINGS.length];
+    private boolean anySlave;
+
+    /**
+     * Use {@link #analyze(Iterable)}.
+     */
+    private CommonSettingsAnalyzer() {
+    }
+
+    /**
+     * Works out the common settings of the DumbSlaves among the nodes, other nodes are skipped.
+     * @param nodes the nodes.
+     * @return the common settings.
+     */
+    public static Summary analyze(Iterable<? extends Node> nodes) {
+        CommonSettingsAnalyzer analyzer = new CommonSettingsAnalyzer();
+        for (Node node : nodes) {
+            if (node instanceof DumbSlave) {
+                analyzer.add((DumbSlave)node);
+            }
+        }
+        return analyzer.getSummary();
+    }
+
+    /**
+     * Compares the settings of one more slave.
+     * @param slave the slave.
+     */
+    private void add(DumbSlave slave) {
+        if (!anySlave) {
+            anySlave = true;
+            for (int i = 0; i < SETTINGS.length; i++) {
+                if (SETTINGS[i].appliesTo(slave)) {
+                    firstValues[i] = SETTINGS[i].getSettingString(slave);
+                    firstEnvironmentValues[i] = EnvironmentVariables.toVariables(slave, firstValues[i]);
+                    exactSame[i] = true;
+                    environmentSame[i] = true;
+                }
+            }
+            return;
+        }
+        for (int i = 0; i < SETTINGS.length; i++) {
+            if (!exactSame[i] && !environmentSame[i]) {
+                continue;
+            }
+            if (!SETTINGS[i].appliesTo(slave)) {
+                exactSame[i] = false;
+                environmentSame[i] = false;
+                continue;
+            }
+            String value = SETTINGS[i].getSettingString(slave);
+            if (exactSame[i] && !equal(value, firstValues[i])) {
+                exactSame[i] = false;
+            }
+            if (environmentSame[i]
+                    && !equal(EnvironmentVariables.toVariables(slave, value), firstEnvironmentValues[i])) {
+                environmentSame[i] = false;
+            }
+        }
+    }
+
+    /**
+     * Checks if two setting values are equal.
+     * @param value the value, might be null.
+     * @param other the other value, might be null.
+     * @return true if they are.
+     */
+    private static boolean equal(String value, String other) {
+        return value == null ? other == null : value.equals(other);
+    }
+
+    /**
+     * Creates the summary of what has been compared.
+     * @return the summary.
+     */
+    private Summary getSummary() {
+        Map<Setting, String> common = new EnumMap<Setting, String>(Setting.class);
+        for (int i = 0; i < SETTINGS.length; i++) {
+            if (exactSame[i]) {
+                common.put(SETTINGS[i], firstValues[i]);
+            } else if (environmentSame[i]) {
+                common.put(SETTINGS[i], firstEnvironmentValues[i]);
+            }
+        }
+        return new Summary(anySlave, common);
+    }
+
+    /**
+     * The common settings of a list of slaves. Immutable.
+     */
+    public static final class Summary {
+
+        private final boolean anySlave;
+        private final Map<Setting, String> common;
+
+        /**
+         * Standard constructor.
+         * @param anySlave if there were any DumbSlaves among the nodes.
+         * @param common the common value of each setting that had one.
+         */
+        private Summary(boolean anySlave, Map<Setting, String> common) {
+            this.anySlave = anySlave;
+            this.common = Collections.unmodifiableMap(common);
+        }
+
+        /**
+         * Checks if there were any DumbSlaves among the nodes.
+         * @return true if there were.
+         */
+        public boolean hasSlaves() {
+            return anySlave;
+        }
+
+        /**
+         * Gets the common value of a setting.
+         * @param type the setting.
+         * @return the common value, or null if the slaves didn't have one.
+         */
+        public String get(Setting type) {
+            return common.get(type);
+        }
+
+        /**
+         * Checks if the slaves had a common value of a setting.
+         * @param type the setting.
+         * @return true if they had.
+         */
+        public boolean isCommon(Setting type) {
+            return common.containsKey(type);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import com.google.common.collect.MapMaker;
+import hudson.Util;
+import jenkins.model.Jenkins;
+import org.apache.commons.io.output.NullOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+
+/**
+ * Fingerprints of configuration objects like node properties and launchers, for comparing them without keeping
+ * or comparing their XML. Objects with the same fingerprint would be saved the same way.
+ * The fingerprint is a SHA-1 digest of the XML, that is written straight into the digest instead of into a string.
+ * Fingerprints are kept per object instance for as long as the object is in use, since configuration objects
+ * are replaced rather than changed when a node is configured.
+ */
+public class ConfigurationFingerprint {
+
+    private static final Map<Object, String> FINGERPRINTS = new MapMaker().weakKeys().makeMap();
+
+    /**
+     * Not allowing to create instances of this class.
+     */
+    protected ConfigurationFingerprint() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Gets the fingerprint of a configuration object, working it out the first time the object is seen.
+     * @param configuration the object, might be null.
+     * @return the fingerprint, or an empty string for null.
+     */
+    public static String of(Object configuration) {
+        if (configuration == null) {
+            return "";
+        }
+        String fingerprint = FINGERPRINTS.get(configuration);
+        if (fingerprint == null) {
+            fingerprint = compute(configuration);
+            FINGERPRINTS.put(configuration, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Checks if two configuration objects would be saved the same way.
+     * @param configuration the object, might be null.
+     * @param other the other object, might be null.
+     * @return true if they are the same instance or have the same fingerprint.
+     */
+    public static boolean same(Object configuration, Object other) {
+        if (configuration == other) {
+            return true;
+        }
+        if (configuration == null || other == null || configuration.getClass() != other.getClass()) {
+            return false;
+        }
+        return of(configuration).equals(of(other));
+    }
+
+    /**
+     * Works out the fingerprint of a configuration object.
+     * @param configuration the object.
+     * @return the digest of the XML of the object, as hex.
+     */
+    static String compute(Object configuration) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            Writer writer = new OutputStreamWriter(new DigestOutputStream(new NullOutputStream(), digest), "UTF-8");
+            Jenkins.XSTREAM2.toXML(configuration, writer);
+            writer.flush();
+            return Util.toHexString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is required by the Java platform", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write to a digest", e);
+        }
+    }
+}
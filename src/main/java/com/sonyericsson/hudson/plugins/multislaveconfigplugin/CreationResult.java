@@ -0,0 +1,104 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What happened to each node when creating nodes, see {@link SlaveTemplate#createAll(Iterable)}, or when
+ * adding them to Jenkins, see {@link JenkinsNodes#add(java.util.Collection)}.
+ * A node is either created, already existing because another node with the same name is registered, or failed
+ * with a cause.
+ */
+public class CreationResult {
+
+    private final NodeList created = new NodeList();
+    private final List<String> existing = new ArrayList<String>();
+    private final Map<String, String> failures = new LinkedHashMap<String, String>();
+
+    /**
+     * Records a created node.
+     * @param node the node.
+     */
+    void addCreated(Node node) {
+        created.add(node);
+    }
+
+    /**
+     * Records a node that wasn't added since its name was taken.
+     * @param name the name of the node.
+     */
+    void addExisting(String name) {
+        existing.add(name);
+    }
+
+    /**
+     * Records a node that couldn't be created.
+     * @param name the name of the node.
+     * @param cause why it couldn't be created.
+     */
+    void addFailure(String name, String cause) {
+        failures.put(name, cause);
+    }
+
+    /**
+     * The created nodes, in the order they were asked for.
+     * @return the nodes.
+     */
+    public NodeList getCreated() {
+        return created;
+    }
+
+    /**
+     * The names of the nodes that weren't added since their names were taken.
+     * @return the names.
+     */
+    public List<String> getExisting() {
+        return Collections.unmodifiableList(existing);
+    }
+
+    /**
+     * The nodes that couldn't be created, with the causes.
+     * @return map from node name to cause.
+     */
+    public Map<String, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Checks if all nodes were created.
+     * @return true if no node already existed or failed.
+     */
+    public boolean isSuccessful() {
+        return existing.isEmpty() && failures.isEmpty();
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.Extension;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.OfflineCause;
+import hudson.util.DaemonThreadFactory;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Deletes slaves in the background without aborting their builds.
+ * The slaves are first marked as temporarily offline with a {@link DeletionCause}, so that they don't take any
+ * new builds. Idle slaves are removed right away, busy ones as soon as their builds have finished. Finished builds
+ * and computers going offline wake the job up through listeners. The job only polls a slave whose builds have
+ * all finished but whose executors haven't become idle yet.
+ * Slaves that are still busy when the deadline has passed are removed anyway.
+ * Slaves that can't be removed get back the offline state they had before.
+ */
+public class DeleteJob {
+
+    /**
+     * Milliseconds between looks at a computer whose builds have finished, the executor of a build becomes idle
+     * just after the build is finalized.
+     */
+    static final long RECHECK_DELAY = 1000;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new DaemonThreadFactory());
+    private static final Set<DeleteJob> ACTIVE = new CopyOnWriteArraySet<DeleteJob>();
+
+    private final NodeList nodes;
+    private final long timeout;
+    private final Map<String, Node> pending = new LinkedHashMap<String, Node>();
+    private final Map<String, OfflineCause> previousCauses = new HashMap<String, OfflineCause>();
+    private final RemovalResult result = new RemovalResult();
+    private final List<String> forced = new ArrayList<String>();
+    private final AtomicBoolean checkScheduled = new AtomicBoolean();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private long deadline;
+    private ScheduledFuture<?> deadlineTask;
+
+    /**
+     * Standard constructor.
+     * @param nodes the slaves to delete.
+     * @param timeout milliseconds to wait for busy slaves before removing them anyway, 0 to not wait at all.
+     */
+    public DeleteJob(NodeList nodes, long timeout) {
+        this.nodes = nodes;
+        this.timeout = Math.max(0, timeout);
+    }
+
+    /**
+     * Takes the slaves offline and starts removing them, returns right away.
+     */
+    public void start() {
+        Map<String, Computer> computers = getComputers();
+        synchronized (this) {
+            deadline = System.currentTimeMillis() + timeout;
+            for (Node node : nodes) {
+                pending.put(node.getNodeName(), node);
+                Computer computer = computers.get(node.getNodeName());
+                if (computer != null) {
+                    if (computer.isTemporarilyOffline()) {
+                        previousCauses.put(node.getNodeName(), computer.getOfflineCause());
+                    }
+                    computer.setTemporarilyOffline(true, new DeletionCause());
+                }
+            }
+        }
+        ACTIVE.add(this);
+        deadlineTask = SCHEDULER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                removeIdle(true);
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        scheduleCheck(0);
+    }
+
+    /**
+     * Looks at the computers of the waiting slaves again after a delay, unless that is already going to happen.
+     * @param delay milliseconds to wait.
+     */
+    void scheduleCheck(long delay) {
+        if (checkScheduled.compareAndSet(false, true)) {
+            SCHEDULER.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    checkScheduled.set(false);
+                    removeIdle(false);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Removes the waiting slaves that are idle, or all of them.
+     * Slaves that couldn't be removed get back their previous offline state and are reported as failed.
+     * If a waiting slave has finished its builds but isn't idle yet, it is looked at again after
+     * {@link #RECHECK_DELAY}.
+     * @param force true to remove busy slaves as well.
+     */
+    synchronized void removeIdle(boolean force) {
+        if (isFinished()) {
+            return;
+        }
+        Map<String, Computer> computers = getComputers();
+        List<Node> ready = new ArrayList<Node>();
+        List<String> busy = new ArrayList<String>();
+        boolean finishing = false;
+        for (Node node : pending.values()) {
+            Computer computer = computers.get(node.getNodeName());
+            if (computer == null || computer.isIdle()) {
+                ready.add(node);
+            } else if (force) {
+                ready.add(node);
+                busy.add(node.getNodeName());
+            } else if (isFinishing(computer)) {
+                finishing = true;
+            }
+        }
+        if (finishing) {
+            scheduleCheck(RECHECK_DELAY);
+        }
+        if (ready.isEmpty()) {
+            return;
+        }
+        RemovalResult removal = JenkinsNodes.remove(ready);
+        result.addAll(removal);
+        for (Node node : ready) {
+            String name = node.getNodeName();
+            pending.remove(name);
+            Computer computer = computers.get(name);
+            if (removal.getFailures().containsKey(name)) {
+                if (computer != null && computer.getOfflineCause() instanceof DeletionCause) {
+                    restore(name, computer);
+                }
+            } else if (busy.contains(name)) {
+                forced.add(name);
+            }
+        }
+        if (pending.isEmpty()) {
+            ACTIVE.remove(this);
+            if (deadlineTask != null) {
+                deadlineTask.cancel(false);
+            }
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Gives a computer that couldn't be removed back the offline state it had before the job started.
+     * @param name the name of the slave.
+     * @param computer the computer of the slave.
+     */
+    private void restore(String name, Computer computer) {
+        if (previousCauses.containsKey(name)) {
+            computer.setTemporarilyOffline(true, previousCauses.get(name));
+        } else {
+            computer.setTemporarilyOffline(false, null);
+        }
+    }
+
+    /**
+     * Checks if all builds on a busy computer have finished, so that it is about to become idle.
+     * @param computer the computer.
+     * @return true if no executor of the computer is running a build.
+     */
+    static boolean isFinishing(Computer computer) {
+        List<Executor> executors = new ArrayList<Executor>(computer.getExecutors());
+        executors.addAll(computer.getOneOffExecutors());
+        for (Executor executor : executors) {
+            if (executor.isBusy()) {
+                Queue.Executable executable = executor.getCurrentExecutable();
+                if (!(executable instanceof Run) || ((Run)executable).isBuilding()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the computers of Jenkins by name.
+     * @return map from node name to computer.
+     */
+    private static Map<String, Computer> getComputers() {
+        Map<String, Computer> computers = new HashMap<String, Computer>();
+        for (Computer computer : Hudson.getInstance().getComputers()) {
+            computers.put(computer.getName(), computer);
+        }
+        return computers;
+    }
+
+    /**
+     * Wakes up all running delete jobs.
+     * @param delay milliseconds to wait before looking at the computers.
+     */
+    static void wakeUp(long delay) {
+        for (DeleteJob job : ACTIVE) {
+            job.scheduleCheck(delay);
+        }
+    }
+
+    /**
+     * Waits for the job to finish.
+     * @param timeoutMillis the longest time to wait.
+     * @return true if the job finished in time.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean waitFor(long timeoutMillis) throws InterruptedException {
+        return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks if all slaves have been handled.
+     * @return true if the job is finished.
+     */
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * What happened to each slave that has been handled so far.
+     * @return the result.
+     */
+    public synchronized RemovalResult getResult() {
+        return result;
+    }
+
+    /**
+     * The progress of this job, polled by the deleted page.
+     * @return JSONObject with the total number of slaves, the number of deleted, waiting, forced and failed
+     *         slaves, the failures, the seconds left until busy slaves are removed anyway and whether the job is
+     *         finished.
+     */
+    public synchronized JSONObject getProgress() {
+        JSONArray failures = new JSONArray();
+        for (Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+            failures.add(failure.getKey() + ": " + failure.getValue());
+        }
+        JSONObject progress = new JSONObject();
+        progress.put("total", nodes.size());
+        progress.put("done", result.getRemoved().size() + result.getMissing().size());
+        progress.put("waiting", pending.size());
+        progress.put("forced", forced.size());
+        progress.put("failed", result.getFailures().size());
+        progress.put("failures", failures);
+        progress.put("secondsLeft", Math.max(0, (deadline - System.currentTimeMillis()) / 1000));
+        progress.put("finished", isFinished());
+        return progress;
+    }
+
+    /**
+     * The reason that slaves being deleted are offline. Tells them apart from slaves taken offline for other
+     * reasons, and is shown on the computer pages while the slaves wait for their builds to finish.
+     */
+    public static final class DeletionCause extends OfflineCause.SimpleOfflineCause {
+        /**
+         * Standard constructor.
+         */
+        DeletionCause() {
+            super(Messages._SlaveBeingDeleted());
+        }
+    }
+
+    /**
+     * Wakes up the delete jobs when a build has finished, since its slave might be idle now.
+     */
+    @Extension
+    public static class BuildListener extends RunListener<Run> {
+        /**
+         * Standard constructor.
+         */
+        public BuildListener() {
+            super(Run.class);
+        }
+
+        @Override
+        public void onFinalized(Run run) {
+            if (!ACTIVE.isEmpty()) {
+                wakeUp(0);
+            }
+        }
+    }
+
+    /**
+     * Wakes up the delete jobs when a computer goes offline, since it can't be building anything then.
+     */
+    @Extension
+    public static class OfflineListener extends ComputerListener {
+        @Override
+        public void onOffline(Computer computer) {
+            if (!ACTIVE.isEmpty()) {
+                wakeUp(0);
+            }
+        }
+    }
+}
@@ -129,58 +129,35 @@ public class EnvironmentVariables {
     }
 
     /**
-     * Switches from environment variables in most configuration fields for the slave and returns a new slave.
-     * For example, if the description contains $NAME,
-     * a new slave with the actual node name as description will be returned.
-     * @param slave the slave to interpret environment variables on
-     * @return a new slave with environment variables interpreted, otherwise same settings
+     * Switches from environment variables in the settings of a launcher.
+     * A new launcher is only created if the settings contained environment variables.
+     * @param slaveName the name of the slave to base the environment variables on
+     * @param launcher the launcher to interpret environment variables on, might be null
+     * @return the launcher with environment variables interpreted, or the same launcher if there were none
      */
-    public static DumbSlave fromVariables(DumbSlave slave) {
-        ComputerLauncher launcher = slave.getLauncher();
-        String description = slave.getNodeDescription();
-        String remoteFS = slave.getRemoteFS();
-        String labels = slave.getLabelString();
-
+    public static ComputerLauncher fromVariables(String slaveName, ComputerLauncher launcher) {
         if (launcher instanceof CommandLauncher) {
             String command = ((CommandLauncher)launcher).getCommand();
             if (containsEnvironmentVariables(command)) {
-                command = fromVariables(slave, command);
-                launcher = new CommandLauncher(command);
+                return new CommandLauncher(fromVariables(slaveName, command));
             }
         } else if (launcher instanceof ManagedWindowsServiceLauncher) {
             String password = ((ManagedWindowsServiceLauncher)launcher).password.getPlainText();
             String userName = ((ManagedWindowsServiceLauncher)launcher).userName;
             if (containsEnvironmentVariables(password)
                     || EnvironmentVariables.containsEnvironmentVariables(userName)) {
-                password = fromVariables(slave, password);
-                userName = fromVariables(slave, userName);
-                launcher = new ManagedWindowsServiceLauncher(userName, password);
+                return new ManagedWindowsServiceLauncher(fromVariables(slaveName, userName),
+                        fromVariables(slaveName, password));
             }
         } else if (launcher instanceof JNLPLauncher) {
             String tunnel = Util.fixNull(((JNLPLauncher)launcher).tunnel);
             String vmargs = Util.fixNull(((JNLPLauncher)launcher).vmargs);
             if (containsEnvironmentVariables(tunnel)
                     || containsEnvironmentVariables(vmargs)) {
-                tunnel = fromVariables(slave, tunnel);
-                vmargs = fromVariables(slave, vmargs);
-                launcher = new JNLPLauncher(tunnel, vmargs);
+                return new JNLPLauncher(fromVariables(slaveName, tunnel), fromVariables(slaveName, vmargs));
             }
         }
-        description = fromVariables(slave, description);
-        remoteFS = fromVariables(slave, remoteFS);
-        labels = fromVariables(slave, labels);
-
-        try {
-            return new DumbSlave(slave.getNodeName(), description, remoteFS, String.valueOf(slave.getNumExecutors()),
-                    slave.getMode(), labels, launcher, slave.getRetentionStrategy(),
-                    slave.getNodeProperties().toList());
-        } catch (IOException e) {
-            logger.log(Level.WARNING, "Failed to interpret environment variables on slave");
-            throw new Failure(Messages.FailedToInterpretEnvVars());
-        }  catch (Descriptor.FormException e) {
-            logger.log(Level.WARNING, "Failed to interpret environment variables on slave");
-            throw new Failure(Messages.FailedToInterpretEnvVars());
-        }
+        return launcher;
     }
 
     /**
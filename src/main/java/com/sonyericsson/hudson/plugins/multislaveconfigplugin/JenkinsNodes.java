@@ -0,0 +1,297 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.model.Queue;
+import hudson.slaves.OfflineCause;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes to the node list of Jenkins that affect many nodes at once.
+ * Jenkins keeps all nodes in its own configuration, so every change of the node list rewrites all of them.
+ * Changing nodes one by one with {@link Hudson#addNode(Node)} and {@link Hudson#removeNode(Node)} would do
+ * that once per node, here it is done once per batch.
+ * The new node list is worked out without locking Jenkins. Jenkins is only locked on the same monitor as its own
+ * addNode and removeNode to check that the node list is still the one the new list was worked out from, and to
+ * swap it. If another change has slipped in, the new list is worked out again under the lock.
+ */
+public class JenkinsNodes {
+
+    /**
+     * Not allowing to create instances of this class.
+     */
+    protected JenkinsNodes() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * The nodes registered in Jenkins right now, for checking if a node instance is still the registered one.
+     * @return a new set with the registered nodes, compared by identity.
+     */
+    public static Set<Node> getRegistered() {
+        return new NodeList(Hudson.getInstance().getNodes()).toIdentitySet();
+    }
+
+    /**
+     * Replaces nodes by name, keeping their position in the node list.
+     * Nodes with names that aren't registered, like slaves that have been deleted since they were selected, are
+     * not added back. New nodes are added with {@link #add(java.util.Collection)}.
+     * @param replacements the new nodes.
+     * @return the names of the nodes that weren't replaced since they aren't registered.
+     * @throws IOException if the node list couldn't be saved.
+     */
+    public static List<String> replace(Collection<? extends Node> replacements) throws IOException {
+        if (replacements.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Map<String, Node> byName = new LinkedHashMap<String, Node>(replacements.size() * 2);
+        for (Node replacement : replacements) {
+            byName.put(replacement.getNodeName(), replacement);
+        }
+        final List<String> missing = new ArrayList<String>();
+        swap(new Edit() {
+            @Override
+            List<Node> apply(List<Node> current) {
+                Map<String, Node> remaining = new LinkedHashMap<String, Node>(byName);
+                List<Node> newNodeList = new ArrayList<Node>(current.size());
+                for (Node node : current) {
+                    Node replacement = remaining.remove(node.getNodeName());
+                    if (replacement != null) {
+                        newNodeList.add(replacement);
+                    } else {
+                        newNodeList.add(node);
+                    }
+                }
+                missing.clear();
+                missing.addAll(remaining.keySet());
+                if (remaining.size() == byName.size()) {
+                    return null;
+                }
+                return newNodeList;
+            }
+        });
+        return missing;
+    }
+
+    /**
+     * Adds new nodes at the end of the node list, with one save of the node list.
+     * Unlike {@link #replace(java.util.Collection)}, a node whose name has been taken since it was created is not
+     * added, so that a slave created by someone else in the meantime isn't overwritten.
+     * If the node list can't be saved the nodes are added to Jenkins but will be gone after a restart,
+     * so they are reported as failed.
+     * @param nodes the nodes to add.
+     * @return what happened to each node.
+     */
+    public static CreationResult add(final Collection<? extends Node> nodes) {
+        CreationResult result = new CreationResult();
+        if (nodes.isEmpty()) {
+            return result;
+        }
+        final List<Node> added = new ArrayList<Node>(nodes.size());
+        final List<String> existing = new ArrayList<String>();
+        Edit edit = new Edit() {
+            @Override
+            List<Node> apply(List<Node> current) {
+                added.clear();
+                existing.clear();
+                Set<String> taken = new HashSet<String>(current.size() * 2);
+                for (Node node : current) {
+                    taken.add(node.getNodeName());
+                }
+                for (Node node : nodes) {
+                    if (taken.add(node.getNodeName())) {
+                        added.add(node);
+                    } else {
+                        existing.add(node.getNodeName());
+                    }
+                }
+                if (added.isEmpty()) {
+                    return null;
+                }
+                List<Node> newNodeList = new ArrayList<Node>(current.size() + added.size());
+                newNodeList.addAll(current);
+                newNodeList.addAll(added);
+                return newNodeList;
+            }
+        };
+        try {
+            swap(edit);
+            for (Node node : added) {
+                result.addCreated(node);
+            }
+        } catch (IOException e) {
+            for (Node node : added) {
+                result.addFailure(node.getNodeName(), e.getMessage());
+            }
+        }
+        for (String name : existing) {
+            result.addExisting(name);
+        }
+        return result;
+    }
+
+    /**
+     * Removes nodes by name, with one save of the node list.
+     * The computers of the nodes are disconnected first, as {@link Hudson#removeNode(Node)} does, and the queue
+     * is maintained once afterwards so that builds waiting for the removed nodes are looked at again.
+     * If the node list can't be saved the nodes are removed from Jenkins but will be back after a restart,
+     * so they are reported as failed.
+     * @param nodes the nodes to remove.
+     * @return what happened to each node.
+     */
+    public static RemovalResult remove(Collection<? extends Node> nodes) {
+        RemovalResult result = new RemovalResult();
+        if (nodes.isEmpty()) {
+            return result;
+        }
+        Hudson app = Hudson.getInstance();
+        final Set<String> names = new HashSet<String>(nodes.size() * 2);
+        for (Node node : nodes) {
+            Node registered = app.getNode(node.getNodeName());
+            if (registered == null) {
+                continue;
+            }
+            try {
+                Computer computer = registered.toComputer();
+                if (computer != null) {
+                    computer.disconnect(OfflineCause.create(Messages._SlaveBeingDeleted()));
+                }
+                names.add(node.getNodeName());
+            //CS IGNORE IllegalCatch FOR NEXT 1 LINES. REASON: One broken computer must not stop the others.
+            } catch (RuntimeException e) {
+                result.addFailure(node.getNodeName(), e.getMessage());
+            }
+        }
+
+        final List<String> removed = new ArrayList<String>();
+        Edit edit = new Edit() {
+            @Override
+            List<Node> apply(List<Node> current) {
+                removed.clear();
+                List<Node> remaining = new ArrayList<Node>(current.size());
+                for (Node node : current) {
+                    if (names.contains(node.getNodeName())) {
+                        removed.add(node.getNodeName());
+                    } else {
+                        remaining.add(node);
+                    }
+                }
+                if (removed.isEmpty()) {
+                    return null;
+                }
+                return remaining;
+            }
+        };
+        try {
+            swap(edit);
+            for (String name : removed) {
+                result.addRemoved(name);
+            }
+        } catch (IOException e) {
+            for (String name : removed) {
+                result.addFailure(name, e.getMessage());
+            }
+        }
+
+        Set<String> handled = new HashSet<String>(removed);
+        handled.addAll(result.getFailures().keySet());
+        for (Node node : nodes) {
+            if (handled.add(node.getNodeName())) {
+                result.addMissing(node.getNodeName());
+            }
+        }
+        if (!removed.isEmpty()) {
+            Queue.getInstance().scheduleMaintenance();
+        }
+        return result;
+    }
+
+    /**
+     * Works out a new node list from the current one, without side effects,
+     * since it might be called a second time if the node list has changed meanwhile.
+     */
+    private abstract static class Edit {
+        /**
+         * Works out the new node list.
+         * @param current the current node list.
+         * @return the new node list, or null to leave the node list as it is.
+         */
+        abstract List<Node> apply(List<Node> current);
+    }
+
+    /**
+     * Swaps the node list of Jenkins for the one worked out by an edit.
+     * The edit is applied to a snapshot of the node list without holding the lock. Under the lock, the edit is
+     * applied again only if the node list isn't the same as the snapshot any more.
+     * @param edit the edit.
+     * @throws IOException if the node list couldn't be saved.
+     */
+    private static void swap(Edit edit) throws IOException {
+        Hudson app = Hudson.getInstance();
+        //A copy, in case the list of Jenkins is changed in place.
+        List<Node> snapshot = new ArrayList<Node>(app.getNodes());
+        List<Node> newNodeList = edit.apply(snapshot);
+        synchronized (app) {
+            List<Node> current = app.getNodes();
+            if (!isSame(snapshot, current)) {
+                newNodeList = edit.apply(current);
+            }
+            if (newNodeList != null) {
+                app.setNodes(newNodeList);
+            }
+        }
+    }
+
+    /**
+     * Checks if two node lists have the same node instances in the same order.
+     * @param first the first list.
+     * @param second the second list.
+     * @return true if they are the same.
+     */
+    private static boolean isSame(List<Node> first, List<Node> second) {
+        if (first.size() != second.size()) {
+            return false;
+        }
+        for (int i = 0; i < first.size(); i++) {
+            if (first.get(i) != second.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
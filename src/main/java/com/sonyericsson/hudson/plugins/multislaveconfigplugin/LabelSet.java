@@ -0,0 +1,163 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import hudson.model.Node;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The labels of a slave, parsed once from a whitespace separated label string.
+ * Labels keep the order they were written in and appear only once, adding, removing and looking up a label
+ * are hash lookups. The label names are interned, so thousands of slaves with the same labels share the strings.
+ */
+public final class LabelSet {
+
+    private static final Interner<String> NAMES = Interners.newWeakInterner();
+
+    private final Set<String> labels;
+
+    /**
+     * Standard constructor.
+     * @param labels the labels, not shared with anyone else.
+     */
+    private LabelSet(Set<String> labels) {
+        this.labels = labels;
+    }
+
+    /**
+     * Parses a label string, splitting it on whitespace in a single scan.
+     * @param labelString the label string, may be null.
+     * @return the labels, empty if the string was null or blank.
+     */
+    public static LabelSet parse(String labelString) {
+        Set<String> labels = new LinkedHashSet<String>();
+        if (labelString != null) {
+            int length = labelString.length();
+            int start = -1;
+            for (int i = 0; i <= length; i++) {
+                boolean separator = i == length || Character.isWhitespace(labelString.charAt(i));
+                if (separator && start >= 0) {
+                    labels.add(NAMES.intern(labelString.substring(start, i)));
+                    start = -1;
+                } else if (!separator && start < 0) {
+                    start = i;
+                }
+            }
+        }
+        return new LabelSet(labels);
+    }
+
+    /**
+     * Counts on how many of the nodes each label is, in one pass over the nodes.
+     * @param nodes the nodes.
+     * @return map from label to the number of nodes that have it.
+     */
+    public static Map<String, Integer> count(Iterable<? extends Node> nodes) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (Node node : nodes) {
+            for (String label : parse(node.getLabelString()).labels) {
+                Integer count = counts.get(label);
+                if (count == null) {
+                    counts.put(label, 1);
+                } else {
+                    counts.put(label, count + 1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Adds labels that aren't already in this set, after the existing ones.
+     * @param other the labels to add.
+     * @return a new set with the labels of both.
+     */
+    public LabelSet with(LabelSet other) {
+        Set<String> result = new LinkedHashSet<String>(labels);
+        result.addAll(other.labels);
+        return new LabelSet(result);
+    }
+
+    /**
+     * Removes labels from this set.
+     * @param other the labels to remove.
+     * @return a new set with the labels of this set that aren't in the other one.
+     */
+    public LabelSet without(LabelSet other) {
+        Set<String> result = new LinkedHashSet<String>(labels);
+        result.removeAll(other.labels);
+        return new LabelSet(result);
+    }
+
+    /**
+     * Checks if a label is in this set.
+     * @param label the label.
+     * @return true if it is.
+     */
+    public boolean contains(String label) {
+        return labels.contains(label);
+    }
+
+    /**
+     * The labels.
+     * @return the labels in the order they were written.
+     */
+    public Collection<String> getLabels() {
+        return Collections.unmodifiableSet(labels);
+    }
+
+    /**
+     * Checks if there are any labels.
+     * @return true if there are none.
+     */
+    public boolean isEmpty() {
+        return labels.isEmpty();
+    }
+
+    /**
+     * The labels as a label string.
+     * @return the labels separated by single spaces.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (String label : labels) {
+            if (builder.length() > 0) {
+                builder.append(' ');
+            }
+            builder.append(label);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Failure;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Slave names written as text with number ranges in braces, like rack{01..40}-node{1..8}.
+ * A range is {first..last} or {first..last..step}, numbers are padded with zeros to the length of first, see
+ * {@link NameRange}. With several ranges every combination is a name, the last range changing fastest, so
+ * rack{1..2}-node{1..2} gives rack1-node1, rack1-node2, rack2-node1 and rack2-node2.
+ * Text without braces is a single name.
+ * The names are produced one at a time when iterated, nothing is kept for the combinations already produced.
+ */
+public final class NameExpression implements Iterable<String> {
+
+    private final NameRange[] ranges;
+    private final String suffix;
+
+    /**
+     * Standard constructor.
+     * @param ranges the ranges in order, each with the text before it as prefix.
+     * @param suffix the text after the last range.
+     */
+    private NameExpression(List<NameRange> ranges, String suffix) {
+        this.ranges = ranges.toArray(new NameRange[ranges.size()]);
+        this.suffix = suffix;
+    }
+
+    /**
+     * Parses an expression.
+     * @param expression the expression, like rack{01..40}-node{1..8}.
+     * @return the parsed expression.
+     * @throws Failure if a brace isn't matched, or a range isn't non-negative integers in increasing order
+     *                 with a positive step.
+     */
+    public static NameExpression parse(String expression) {
+        List<NameRange> ranges = new ArrayList<NameRange>();
+        int textStart = 0;
+        int open = expression.indexOf('{');
+        while (open >= 0) {
+            int close = expression.indexOf('}', open);
+            if (close < 0 || expression.lastIndexOf('}', open) >= textStart) {
+                throw new Failure(Messages.WrongNameExpression(expression));
+            }
+            ranges.add(parseRange(expression, expression.substring(textStart, open),
+                    expression.substring(open + 1, close)));
+            textStart = close + 1;
+            open = expression.indexOf('{', textStart);
+        }
+        String suffix = expression.substring(textStart);
+        if (suffix.indexOf('}') >= 0) {
+            throw new Failure(Messages.WrongNameExpression(expression));
+        }
+        return new NameExpression(ranges, suffix);
+    }
+
+    /**
+     * Parses the inside of a pair of braces.
+     * @param expression the whole expression, for the error message.
+     * @param prefix the text before the range.
+     * @param range the text between the braces, like 01..40 or 1..10..2.
+     * @return the range.
+     * @throws Failure if the range is wrong.
+     */
+    private static NameRange parseRange(String expression, String prefix, String range) {
+        String[] bounds = range.split("\\.\\.", -1);
+        if (bounds.length < 2 || bounds.length > 3 || range.indexOf('{') >= 0) {
+            throw new Failure(Messages.WrongNameExpression(expression));
+        }
+        long first = parseNumber(expression, bounds[0]);
+        long last = parseNumber(expression, bounds[1]);
+        long step = 1;
+        if (bounds.length == 3) {
+            step = parseNumber(expression, bounds[2]);
+        }
+        if (first > last || step < 1 || last == Long.MAX_VALUE) {
+            throw new Failure(Messages.WrongNameExpression(expression));
+        }
+        return new NameRange(prefix, first, last, bounds[0].length(), step);
+    }
+
+    /**
+     * Parses one of the numbers of a range.
+     * @param expression the whole expression, for the error message.
+     * @param digits the number.
+     * @return the number.
+     * @throws Failure if it isn't a non-negative integer.
+     */
+    private static long parseNumber(String expression, String digits) {
+        if (digits.isEmpty()) {
+            throw new Failure(Messages.WrongNameExpression(expression));
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            char c = digits.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new Failure(Messages.WrongNameExpression(expression));
+            }
+        }
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            throw new Failure(Messages.WrongNameExpression(expression));
+        }
+    }
+
+    /**
+     * The number of names, counted without producing them.
+     * @return the count, or {@link Long#MAX_VALUE} if there are more.
+     */
+    public long size() {
+        long size = 1;
+        for (NameRange range : ranges) {
+            if (size > Long.MAX_VALUE / range.size()) {
+                return Long.MAX_VALUE;
+            }
+            size *= range.size();
+        }
+        return size;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final long[] positions = new long[ranges.length];
+            private boolean hasNext = true;
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext) {
+                    throw new NoSuchElementException();
+                }
+                StringBuilder name = new StringBuilder();
+                for (int i = 0; i < ranges.length; i++) {
+                    ranges[i].appendTo(name, positions[i]);
+                }
+                name.append(suffix);
+                advance();
+                return name.toString();
+            }
+
+            /**
+             * Moves on to the next combination, like an odometer with the last range as the fastest wheel.
+             */
+            private void advance() {
+                for (int i = ranges.length - 1; i >= 0; i--) {
+                    positions[i]++;
+                    if (positions[i] < ranges[i].size()) {
+                        return;
+                    }
+                    positions[i] = 0;
+                }
+                hasNext = false;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.Util;
+import hudson.model.Failure;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A span of slave names, a prefix followed by every number from first to last, like slave01 to slave40.
+ * With a step only every step:th number is used, like 1, 3, 5 for 1 to 6 with step 2.
+ * The names are produced one at a time when iterated, so a large span doesn't take any memory until the names
+ * are actually used. Numbers are padded with zeros to the length of the first number as it was written, so
+ * "01" to "40" gives 01, 02, ..., 40, while "1" to "40" gives 1, 2, ..., 40.
+ * Several spans are combined into one name by {@link NameExpression}.
+ */
+public final class NameRange implements Iterable<String> {
+
+    /**
+     * The largest number of slaves that can be created at once from the create slaves page.
+     */
+    public static final long MAX_NAMES = 10000;
+
+    private final String prefix;
+    private final long first;
+    private final long last;
+    private final int width;
+    private final long step;
+
+    /**
+     * Standard constructor.
+     * @param prefix the text before the number.
+     * @param first the first number, not negative.
+     * @param last the last number, not less than first and less than {@link Long#MAX_VALUE}.
+     * @param width the minimum number of digits, shorter numbers are padded with zeros.
+     */
+    public NameRange(String prefix, long first, long last, int width) {
+        this(prefix, first, last, width, 1);
+    }
+
+    /**
+     * Constructor for spans with a step.
+     * @param prefix the text before the number.
+     * @param first the first number, not negative.
+     * @param last the last number, not less than first and less than {@link Long#MAX_VALUE}.
+     *             It is only part of the span if it is reached from first by whole steps.
+     * @param width the minimum number of digits, shorter numbers are padded with zeros.
+     * @param step the difference between two numbers next to each other, at least 1.
+     */
+    public NameRange(String prefix, long first, long last, int width, long step) {
+        if (first < 0 || last < first || last == Long.MAX_VALUE || step < 1) {
+            throw new IllegalArgumentException("Invalid range " + first + ".." + last + ".." + step);
+        }
+        this.prefix = prefix;
+        this.first = first;
+        this.last = last;
+        this.width = width;
+        this.step = step;
+    }
+
+    /**
+     * Parses the span from the create slaves page.
+     * @param prefix the text before the number.
+     * @param first the first number as written by the user, its length decides the zero padding.
+     * @param last the last number.
+     * @return the range.
+     * @throws Failure if the numbers aren't non-negative integers, first is greater than last or the span has more
+     *                 than {@link #MAX_NAMES} names.
+     */
+    public static NameRange parse(String prefix, String first, String last) {
+        String firstDigits = Util.fixEmptyAndTrim(first);
+        String lastDigits = Util.fixEmptyAndTrim(last);
+        if (firstDigits == null || lastDigits == null) {
+            throw new Failure(Messages.WrongIntervalString(prefix, first, last));
+        }
+        int firstNumber;
+        int lastNumber;
+        try {
+            firstNumber = Integer.parseInt(firstDigits);
+            lastNumber = Integer.parseInt(lastDigits);
+        } catch (NumberFormatException e) {
+            throw new Failure(Messages.WrongIntervalString(prefix, first, last));
+        }
+        if (firstNumber < 0 || firstNumber > lastNumber) {
+            throw new Failure(Messages.WrongIntervalString(prefix, first, last));
+        }
+        NameRange range = new NameRange(prefix, firstNumber, lastNumber, firstDigits.length());
+        if (range.size() > MAX_NAMES) {
+            throw new Failure(Messages.TooManySlaves(range.size(), MAX_NAMES));
+        }
+        return range;
+    }
+
+    /**
+     * The number of names in the span.
+     * @return the count.
+     */
+    public long size() {
+        return (last - first) / step + 1;
+    }
+
+    /**
+     * Gets one name in the span.
+     * @param position the position of the name in the span, from 0 to size - 1.
+     * @return the prefix followed by the padded number.
+     */
+    public String get(long position) {
+        StringBuilder name = new StringBuilder(prefix.length() + width);
+        appendTo(name, position);
+        return name.toString();
+    }
+
+    /**
+     * Appends one name in the span.
+     * @param name where to append it.
+     * @param position the position of the name in the span, from 0 to size - 1.
+     */
+    void appendTo(StringBuilder name, long position) {
+        String digits = Long.toString(first + position * step);
+        name.append(prefix);
+        for (int i = digits.length(); i < width; i++) {
+            name.append('0');
+        }
+        name.append(digits);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private final long size = size();
+            private long next;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.util.DaemonThreadFactory;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Does something with every node in a list in the background.
+ * The nodes are handled in batches in parallel on a bounded thread pool shared by all jobs.
+ * A node that fails doesn't stop the others, the failures are collected and reported when the job is finished.
+ */
+public abstract class NodeJob {
+
+    /**
+     * The number of nodes handled by one task on the thread pool.
+     */
+    static final int BATCH_SIZE = 50;
+
+    private static final int MAX_THREADS = 4;
+    private static final Logger logger = Logger.getLogger(NodeJob.class.getName());
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors())),
+            new DaemonThreadFactory());
+
+    /**
+     * The nodes to handle.
+     */
+    protected final NodeList nodes;
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger remainingBatches = new AtomicInteger();
+    private final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * Standard constructor.
+     * @param nodes the nodes to handle.
+     */
+    protected NodeJob(NodeList nodes) {
+        this.nodes = nodes;
+    }
+
+    /**
+     * Starts the job, returns right away.
+     */
+    public void start() {
+        int batches = (nodes.size() + BATCH_SIZE - 1) / BATCH_SIZE;
+        if (batches == 0) {
+            complete();
+            return;
+        }
+        remainingBatches.set(batches);
+        for (int from = 0; from < nodes.size(); from += BATCH_SIZE) {
+            final int batchStart = from;
+            final int batchEnd = Math.min(nodes.size(), from + BATCH_SIZE);
+            EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runBatch(batchStart, batchEnd);
+                    } finally {
+                        if (remainingBatches.decrementAndGet() == 0) {
+                            complete();
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Handles the nodes in one batch.
+     * @param from index of the first node in the batch.
+     * @param to index after the last node in the batch.
+     */
+    private void runBatch(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Node node = nodes.get(i);
+            try {
+                process(i, node);
+            //CS IGNORE IllegalCatch FOR NEXT 1 LINES. REASON: One broken node must not stop the others.
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, "Failed to handle slave " + node.getNodeName(), e);
+                addFailure(node.getNodeName() + ": " + e.getMessage(), 1);
+            }
+            done.incrementAndGet();
+        }
+    }
+
+    /**
+     * Finishes the job once all nodes have been handled.
+     */
+    private void complete() {
+        try {
+            finish();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Handles one node, called concurrently for different nodes.
+     * @param index the index of the node in the list.
+     * @param node the node.
+     */
+    protected abstract void process(int index, Node node);
+
+    /**
+     * Called once when all nodes have been handled, before the job counts as finished.
+     */
+    protected void finish() {
+    }
+
+    /**
+     * Reports a failure.
+     * @param message what failed.
+     * @param nodeCount the number of nodes the failure concerns.
+     */
+    protected void addFailure(String message, int nodeCount) {
+        failures.add(message);
+        failed.addAndGet(nodeCount);
+    }
+
+    /**
+     * Waits for the job to finish.
+     * @param timeout the maximum time to wait, in milliseconds.
+     * @return true if the job finished.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean waitFor(long timeout) throws InterruptedException {
+        return finished.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Checks if the job has finished.
+     * @return true if it has.
+     */
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * The number of nodes to handle.
+     * @return the total.
+     */
+    public int getTotal() {
+        return nodes.size();
+    }
+
+    /**
+     * The number of nodes handled so far, failed or not.
+     * @return the count.
+     */
+    public int getDone() {
+        return done.get();
+    }
+
+    /**
+     * The number of nodes that have failed so far.
+     * @return the count.
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * What has failed so far.
+     * @return a copy of the failure messages.
+     */
+    public List<String> getFailures() {
+        synchronized (failures) {
+            return new ArrayList<String>(failures);
+        }
+    }
+
+    /**
+     * The progress of the job for the progress pages.
+     * @return JSONObject with total, done, failed, failures and finished.
+     */
+    public JSONObject getProgress() {
+        JSONObject progress = new JSONObject();
+        progress.put("total", getTotal());
+        progress.put("done", getDone());
+        progress.put("failed", getFailed());
+        progress.put("failures", JSONArray.fromObject(getFailures()));
+        progress.put("finished", isFinished());
+        return progress;
+    }
+}
@@ -25,7 +25,6 @@
 package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
 
 import antlr.ANTLRException;
-import hudson.model.Descriptor;
 import hudson.model.Failure;
 import hudson.model.Hudson;
 import hudson.model.Node;
@@ -38,23 +37,20 @@ import hudson.slaves.NodeProperty;
 import hudson.slaves.NodePropertyDescriptor;
 import hudson.slaves.RetentionStrategy;
 import hudson.slaves.SimpleScheduledRetentionStrategy;
-import hudson.util.DescribableList;
-import jenkins.model.Jenkins;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.Stapler;
 
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Set;
 
 import static com.sonyericsson.hudson.plugins.multislaveconfigplugin.Setting.IDLE_DELAY;
 import static com.sonyericsson.hudson.plugins.multislaveconfigplugin.Setting.IN_DEMAND_DELAY;
@@ -74,7 +70,26 @@ import static com.sonyericsson.hudson.plugins.multislaveconfigplugin.Setting.VM_
  */
 public class NodeList extends ArrayList<Node> {
 
-    private static final Logger logger = Logger.getLogger(NodeList.class.getName());
+    /**
+     * The common settings, see {@link #getCommonSettings()}.
+     * Only valid as long as {@link #modCount} is {@link #commonSettingsModCount}.
+     */
+    private transient CommonSettingsAnalyzer.Summary commonSettings;
+    private transient int commonSettingsModCount;
+
+    /**
+     * The node property values, see {@link #getPropertyVariants()}.
+     * Only valid as long as {@link #modCount} is {@link #propertyVariantsModCount}.
+     */
+    private transient List<PropertyVariants> propertyVariants;
+    private transient int propertyVariantsModCount;
+
+    /**
+     * The number of slaves with each label, see {@link #getLabelCounts()}.
+     * Only valid as long as {@link #modCount} is {@link #labelCountsModCount}.
+     */
+    private transient Map<String, Integer> labelCounts;
+    private transient int labelCountsModCount;
 
     /**
      * Constructor to help adding existing nodes to a new list.
@@ -108,6 +123,14 @@ public class NodeList extends ArrayList<Node> {
         return true;
     }
 
+    /**
+     * A copy of this list sorted by name, this list is left as it is.
+     * @return the sorted copy.
+     */
+    public NodeList sortedByName() {
+        return new NodeList(this).sortByName();
+    }
+
     /**
      * Sorts this list by name.
      * @return sorted list.
@@ -187,9 +210,13 @@ public class NodeList extends ArrayList<Node> {
      * @return if all the slaves still exist or not
      */
     protected boolean slavesStillExist() {
-        Hudson app = Hudson.getInstance();
+        List<Node> registeredNodes = Hudson.getInstance().getNodes();
+        Set<String> registeredNames = new HashSet<String>(registeredNodes.size() * 2);
+        for (Node node : registeredNodes) {
+            registeredNames.add(node.getNodeName());
+        }
         for (Node node : this) {
-            if (app.getNode(node.getNodeName()) == null) {
+            if (!registeredNames.contains(node.getNodeName())) {
                 return false;
             }
         }
@@ -197,96 +224,89 @@ public class NodeList extends ArrayList<Node> {
     }
 
     /**
-     * Changes the settings for all nodes in the list.
-     * @param settings the settings to make as a hashmap
-     * @return The changed list
+     * The nodes in this list as a set, for checking membership in constant time.
+     * Nodes are compared by identity, the same as {@link #contains(Object)} does since nodes don't override equals.
+     * @return a new set with the nodes in this list.
      */
-    protected synchronized NodeList changeSettings(Map settings) {
-        //The nodes that are not in the newNodeList
-        List<Node> complementaryNodes = getComplementaryNodes();
-        List<Node> newNodeList = new ArrayList<Node>(complementaryNodes);
+    protected Set<Node> toIdentitySet() {
+        Set<Node> nodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>(size() * 2));
+        nodes.addAll(this);
+        return nodes;
+    }
 
-        for (Node node : this) {
-            String newDescription = (String)settings.get("description");
-            String newRemoteFS = (String)settings.get("remoteFS");
-            String newNumExecutors = (String)settings.get("numExecutors");
-            String newSetLabels = (String)settings.get("setLabelString");
-            String newLabelsToAdd = (String)settings.get("addLabelString");
-            String newLabelsToRemove = (String)settings.get("removeLabelString");
-            Node.Mode newMode = (Node.Mode)settings.get("mode");
-            ComputerLauncher newLauncher = (ComputerLauncher)settings.get("launcher");
-            RetentionStrategy newRetentionStrategy = (RetentionStrategy)settings.get("retentionStrategy");
-            List<NodeProperty<?>> newProperties = (List<NodeProperty<?>>)settings.get("addOrChangeProperties");
-            List<String> removeProperties = (List<String>)settings.get("removeProperties");
+    /**
+     * Changes the settings of one node, without registering the changed node in Jenkins.
+     * Only touches the node itself, so different nodes can be changed concurrently.
+     * The changes are made to a {@link NodeSpec}, so only one new DumbSlave is created,
+     * and none at all if the settings don't change the effective configuration of the node.
+     * @param node the node to change.
+     * @param settings the settings to make as a hashmap
+     * @return the changed node, or the node itself if it isn't a DumbSlave or if nothing changed.
+     * @throws Failure if the changed node couldn't be created.
+     */
+    protected Node changeSettings(Node node, Map settings) {
+        if (!(node instanceof DumbSlave)) { //Not Dumbslave, dont't touch it.
+            return node;
+        }
+        DumbSlave slave = (DumbSlave)node;
+        NodeSpec spec = newSpec(slave, settings);
+        if (spec.isUnchanged(slave)) {
+            return slave;
+        }
+        return spec.build();
+    }
 
-            if (node instanceof DumbSlave) {
-                DumbSlave slave = (DumbSlave)node;
+    /**
+     * Works out the configuration a slave would get with the settings, without changing anything.
+     * Environment variables are switched in and labels are added and removed, as when the settings are applied.
+     * @param slave the slave.
+     * @param settings the settings to make as a hashmap
+     * @return the new configuration of the slave.
+     */
+    protected NodeSpec newSpec(DumbSlave slave, Map settings) {
+        NodeSpec spec = NodeSpec.of(slave);
 
-                if (newDescription == null) {
-                    newDescription = slave.getNodeDescription();
-                }
-                if (newRemoteFS == null) {
-                    newRemoteFS = slave.getRemoteFS();
-                }
-                if (newNumExecutors == null) {
-                    newNumExecutors = String.valueOf(slave.getNumExecutors());
-                }
-                if (newMode == null) {
-                    newMode = slave.getMode();
-                }
-                if (newSetLabels == null) {
-                    newSetLabels = slave.getLabelString();
-                }
-                if (newLauncher == null) {
-                    newLauncher = slave.getLauncher();
-                }
-                if (newRetentionStrategy == null) {
-                    newRetentionStrategy = slave.getRetentionStrategy();
-                }
+        String newDescription = (String)settings.get("description");
+        String newRemoteFS = (String)settings.get("remoteFS");
+        String newNumExecutors = (String)settings.get("numExecutors");
+        String newSetLabels = (String)settings.get("setLabelString");
+        String newLabelsToAdd = (String)settings.get("addLabelString");
+        String newLabelsToRemove = (String)settings.get("removeLabelString");
+        Node.Mode newMode = (Node.Mode)settings.get("mode");
+        ComputerLauncher newLauncher = (ComputerLauncher)settings.get("launcher");
+        RetentionStrategy newRetentionStrategy = (RetentionStrategy)settings.get("retentionStrategy");
+        List<NodeProperty<?>> newProperties = (List<NodeProperty<?>>)settings.get("addOrChangeProperties");
+        List<String> removeProperties = (List<String>)settings.get("removeProperties");
 
-                DescribableList<NodeProperty<?>, NodePropertyDescriptor> describableList = slave.getNodeProperties();
-                List<NodeProperty<?>> oldProperties = describableList.toList();
-                newProperties = getNewProperties(newProperties, oldProperties, removeProperties);
-
-                newLabelsToAdd = EnvironmentVariables.fromVariables(slave, newLabelsToAdd);
-                newLabelsToRemove = EnvironmentVariables.fromVariables(slave, newLabelsToRemove);
-                newSetLabels = addLabels(newLabelsToAdd, newSetLabels);
-                newSetLabels = removeLabels(newLabelsToRemove, newSetLabels);
-
-                DumbSlave changedSlave;
-
-                try {
-                    changedSlave = new DumbSlave(slave.getNodeName(), newDescription, newRemoteFS, newNumExecutors,
-                            newMode, newSetLabels, newLauncher, newRetentionStrategy, newProperties);
-                } catch (Descriptor.FormException e) {
-                    logger.log(Level.WARNING, "Failed to edit slave " + slave.getNodeName()
-                            + " cause: " + e.getMessage());
-                    throw new Failure(Messages.FailedToEditSlave(slave.getNodeName()));
-                } catch (IOException e) {
-                    logger.log(Level.WARNING, "Failed to edit slave " + slave.getNodeName()
-                            + " cause: " + e.getMessage());
-                    throw new Failure(Messages.FailedToEditSlave(slave.getNodeName()));
-                }
-                changedSlave = EnvironmentVariables.fromVariables(changedSlave);
-                try {
-                    newNodeList.add(changedSlave);
-                } catch (Exception e) {
-                    logger.log(Level.WARNING, "Failed to edit slave " + changedSlave.getNodeName()
-                            + " cause: " + e.getMessage());
-                    throw new Failure(Messages.FailedToEditSlave(changedSlave.getNodeName()));
-                }
-            } else { //Not Dumbslave, dont't touch it.
-                newNodeList.add(node);
-            }
+        if (newDescription != null) {
+            spec.setDescription(newDescription);
+        }
+        if (newRemoteFS != null) {
+            spec.setRemoteFS(newRemoteFS);
+        }
+        if (newNumExecutors != null) {
+            spec.setNumExecutors(newNumExecutors);
         }
-        try {
-            Hudson.getInstance().setNodes(newNodeList);
-        } catch (IOException e) {
-            logger.log(Level.WARNING, "Failed to edit nodelist!");
-            throw new Failure(Messages.FailedToEditNodeList());
+        if (newMode != null) {
+            spec.setMode(newMode);
         }
-        newNodeList.removeAll(complementaryNodes);
-        return new NodeList(newNodeList);
+        if (newSetLabels != null) {
+            spec.setLabelString(newSetLabels);
+        }
+        if (newLauncher != null) {
+            spec.setLauncher(newLauncher);
+        }
+        if (newRetentionStrategy != null) {
+            spec.setRetentionStrategy(newRetentionStrategy);
+        }
+        spec.setNodeProperties(getNewProperties(newProperties, spec.getNodeProperties(), removeProperties));
+
+        newLabelsToAdd = EnvironmentVariables.fromVariables(slave, newLabelsToAdd);
+        newLabelsToRemove = EnvironmentVariables.fromVariables(slave, newLabelsToRemove);
+        String labels = addLabels(newLabelsToAdd, spec.getLabelString());
+        spec.setLabelString(removeLabels(newLabelsToRemove, labels));
+
+        return spec.fromVariables();
     }
 
     /**
@@ -342,16 +362,7 @@ public class NodeList extends ArrayList<Node> {
         if (labelsToAdd == null) {
             return oldLabels;
         }
-        String[] labelsToAddArray = labelsToAdd.split("\\s+");
-        List<String> oldLabelsList = Arrays.asList(oldLabels.split("\\s+"));
-        StringBuilder newLabelsBuilder = new StringBuilder(oldLabels).append(" ");
-
-        for (String currentToken : labelsToAddArray) {
-            if (!oldLabelsList.contains(currentToken)) {
-                newLabelsBuilder.append(currentToken).append(" ");
-            }
-        }
-        return newLabelsBuilder.toString();
+        return LabelSet.parse(oldLabels).with(LabelSet.parse(labelsToAdd)).toString();
     }
 
     /**
@@ -364,30 +375,7 @@ public class NodeList extends ArrayList<Node> {
         if (labelsToRemove == null) {
             return oldLabels;
         }
-        String[] oldLabelsArray = oldLabels.split("\\s+");
-        List<String> labelsToRemoveList = Arrays.asList(labelsToRemove.split("\\s+"));
-        StringBuilder newLabelsBuilder = new StringBuilder();
-
-        for (String currentToken : oldLabelsArray) {
-            if (!labelsToRemoveList.contains(currentToken)) {
-                newLabelsBuilder.append(currentToken).append(" ");
-            }
-        }
-        return newLabelsBuilder.toString();
-    }
-
-    /**
-     *  Returns the Jenkins registered nodes that are not in the given list.
-     * @return the complementary list
-     */
-    protected List<Node> getComplementaryNodes() {
-        List<Node> complementaryNodes = new ArrayList<Node>();
-        for (Node node : Hudson.getInstance().getNodes()) {
-            if (node != null && !this.contains(node)) {
-                complementaryNodes.add(node);
-            }
-        }
-        return complementaryNodes;
+        return LabelSet.parse(oldLabels).without(LabelSet.parse(labelsToRemove)).toString();
     }
 
     /**
@@ -399,25 +387,28 @@ public class NodeList extends ArrayList<Node> {
         if (labels == null) {
             return true;
         }
-        String[] labelsArray = labels.split("\\s+");
-
-        for (String currentToken : labelsArray) {
-            boolean tokenExists = false;
-            for (Node node : this) {
-                String[] nodeLabelsArray = node.getLabelString().split("\\s+");
-                List<String> nodeLabelsList = Arrays.asList(nodeLabelsArray);
-                if (nodeLabelsList.contains(currentToken)) {
-                    tokenExists = true;
-                    break;
-                }
-            }
-            if (!tokenExists) {
+        Map<String, Integer> counts = getLabelCounts();
+        for (String label : LabelSet.parse(labels).getLabels()) {
+            if (!counts.containsKey(label)) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * Gets on how many of the slaves in this list each label is.
+     * Worked out once per content of the list.
+     * @return map from label to the number of slaves that have it.
+     */
+    public synchronized Map<String, Integer> getLabelCounts() {
+        if (labelCounts == null || labelCountsModCount != modCount) {
+            labelCounts = Collections.unmodifiableMap(LabelSet.count(this));
+            labelCountsModCount = modCount;
+        }
+        return labelCounts;
+    }
+
     /**
      * Converts submitted form (JSON) to a HashMap containing only the settings to change.
      * Using Strings and not enum Setting as keys since the jelly scripts don't seem to get enum keys correctly.
@@ -545,41 +536,42 @@ public class NodeList extends ArrayList<Node> {
      * @return the common setting string if there was any
      */
     protected String getCommon(Setting type) {
-        if (isEmpty()) {
+        CommonSettingsAnalyzer.Summary summary = getCommonSettings();
+        if (!summary.hasSlaves()) {
             throw new Failure(Messages.EmptyNodeList());
         }
+        return summary.get(type);
+    }
 
-        String environmentFirstString;
-        String comparableString;
-        String environmentComparableString;
-
-        String firstString = type.getSettingString(getFirstSlave());
-        environmentFirstString = EnvironmentVariables.toVariables(getFirstSlave(), firstString);
-
-        boolean exactSameStrings = true;
-        boolean environmentSameStrings = true;
-
-        for (Node node : this) {
-            if (node instanceof DumbSlave) {
-                DumbSlave slave = (DumbSlave)node;
-                comparableString = type.getSettingString(slave);
-                environmentComparableString = EnvironmentVariables.toVariables(slave, comparableString);
-
-                if (!comparableString.equals(firstString)) {
-                    exactSameStrings = false;
-                }
-                if (!environmentComparableString.equals(environmentFirstString)) {
-                    environmentSameStrings = false;
-                }
-                if (!exactSameStrings && !environmentSameStrings) {
-                    return null;
-                }
-            }
-        }
-        if (exactSameStrings) {
-            return firstString;
+    /**
+     * Gets the common settings of all slaves in this list.
+     * The settings pages ask for the same settings many times, so they are worked out in one pass over the slaves
+     * once per content of the list, see {@link CommonSettingsAnalyzer}.
+     * @return the common settings.
+     */
+    public synchronized CommonSettingsAnalyzer.Summary getCommonSettings() {
+        if (commonSettings == null || commonSettingsModCount != modCount) {
+            commonSettings = CommonSettingsAnalyzer.analyze(this);
+            commonSettingsModCount = modCount;
         }
-        return environmentFirstString;
+        return commonSettings;
+    }
+
+    /**
+     * Replacing a node doesn't count as a modification of an ArrayList, so the common settings, property values and
+     * label counts are dropped here.
+     * @param index index of the node to replace
+     * @param node the node to store at the index
+     * @return the node previously at the index
+     */
+    @Override
+    public Node set(int index, Node node) {
+        synchronized (this) {
+            commonSettings = null;
+            propertyVariants = null;
+            labelCounts = null;
+        }
+        return super.set(index, node);
     }
 
     /**
@@ -790,6 +782,7 @@ public class NodeList extends ArrayList<Node> {
     /**
      * Gets a list of {@link hudson.slaves.NodeProperty}s that are common for all
      * slaves in this list. NodeProperties that are not equal are left out.
+     * The properties are compared by their {@link ConfigurationFingerprint}s.
      * @return list of {@link hudson.slaves.NodeProperty}s
      */
     public List<NodeProperty> getNodeProperties() {
@@ -803,25 +796,56 @@ public class NodeList extends ArrayList<Node> {
             if (property != null) {
                 NodePropertyDescriptor propertyDescriptor = property.getDescriptor();
 
-                String firstPropertyString = Jenkins.XSTREAM2.toXML(property);
-                if (firstPropertyString != null) {
-                    boolean allHadSame = true;
-
-                    for (Node otherNode : this) {
-                        NodeProperty otherProperty = otherNode.getNodeProperties().get(propertyDescriptor);
-                        String otherPropertyString = Jenkins.XSTREAM2.toXML(otherProperty);
-                        if (!firstPropertyString.equals(otherPropertyString)) {
-                            allHadSame = false;
-                            break;
-                        }
-                    }
-                    if (allHadSame) {
-                        commonProperties.add(property);
+                boolean allHadSame = true;
+
+                for (Node otherNode : this) {
+                    NodeProperty otherProperty = otherNode.getNodeProperties().get(propertyDescriptor);
+                    if (!ConfigurationFingerprint.same(property, otherProperty)) {
+                        allHadSame = false;
+                        break;
                     }
                 }
+                if (allHadSame) {
+                    commonProperties.add(property);
+                }
             }
         }
         return commonProperties;
     }
 
+    /**
+     * Gets the different values of every kind of node property among the slaves in this list,
+     * and how many slaves have each value, see {@link PropertyVariants}.
+     * Worked out once per content of the list.
+     * @return one entry per kind of node property.
+     */
+    public synchronized List<PropertyVariants> getPropertyVariants() {
+        if (propertyVariants == null || propertyVariantsModCount != modCount) {
+            propertyVariants = Collections.unmodifiableList(PropertyVariants.analyze(this));
+            propertyVariantsModCount = modCount;
+        }
+        return propertyVariants;
+    }
+
+    /**
+     * Gets the slaves in this list that have a specific value of a kind of node property.
+     * @param descriptorClassName the class name of the descriptor of the kind of node property.
+     * @param fingerprint the {@link ConfigurationFingerprint} of the value.
+     * @return a new list with the slaves that have the value.
+     */
+    public NodeList withPropertyVariant(String descriptorClassName, String fingerprint) {
+        NodeList nodes = new NodeList();
+        for (Node node : this) {
+            if (node instanceof DumbSlave) {
+                for (NodeProperty<?> property : node.getNodeProperties()) {
+                    if (property != null && property.getDescriptor().getClass().getName().equals(descriptorClassName)
+                            && ConfigurationFingerprint.of(property).equals(fingerprint)) {
+                        nodes.add(node);
+                        break;
+                    }
+                }
+            }
+        }
+        return nodes;
+    }
 }
@@ -49,7 +49,6 @@ import hudson.slaves.RetentionStrategy;
 import hudson.slaves.SimpleScheduledRetentionStrategy;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONArray;
-import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.Stapler;
@@ -59,11 +58,15 @@ import org.kohsuke.stapler.bind.JavaScriptMethod;
 
 import javax.servlet.ServletException;
 import java.io.IOException;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -93,12 +96,27 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
     protected static final String ICON = "/plugin/" + URL + "/images/computers.png";
 
     /**
-     * Hashmap with user and what userMode that currently is active.
+     * How long doApply and doDeleteSlaves wait for their job to finish before showing the progress page,
+     * in milliseconds.
      */
-    protected HashMap<String, UserMode> userMode = new HashMap<String, UserMode>();
-    private HashMap<String, NodeList> nodeListMap = new HashMap<String, NodeList>();
-    private HashMap<String, HashMap> lastChangedSettings = new HashMap<String, HashMap>();
-    private HashMap<String, Boolean> hadLabels = new HashMap<String, Boolean>();
+    private static final long APPLY_WAIT = 5000;
+
+    /**
+     * How many minutes busy slaves are given to finish their builds before they are deleted anyway,
+     * unless the user says otherwise.
+     */
+    static final int DELETE_TIMEOUT_MINUTES = 10;
+
+    /**
+     * How many of the names that are already taken are listed when creating slaves, the rest are only counted.
+     */
+    static final int MAX_LISTED_NAMES = 10;
+
+    /**
+     * The state of each session, like what userMode that currently is active.
+     * The store is thread safe so that searches don't need to lock the whole link.
+     */
+    protected SessionStateStore sessionStates = new SessionStateStore();
     private static NodeManageLink instance;
 
     /**
@@ -220,7 +238,11 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
      * @return the active nodelist
      */
     public NodeList getNodeList(String sessionId) {
-        return nodeListMap.get(sessionId);
+        SessionState state = sessionStates.get(sessionId);
+        if (state == null) {
+            return null;
+        }
+        return state.getNodeList();
     }
 
     /**
@@ -229,7 +251,53 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
      * @return the last changed settings
      */
     public HashMap getLastChangedSettings(String sessionId) {
-        return lastChangedSettings.get(sessionId);
+        SessionState state = sessionStates.get(sessionId);
+        if (state == null) {
+            return null;
+        }
+        return state.getLastChangedSettings();
+    }
+
+    /**
+     * The state of all sessions.
+     * @return the session state store.
+     */
+    public SessionStateStore getSessionStates() {
+        return sessionStates;
+    }
+
+    /**
+     * The number of sessions that the link keeps state for.
+     * @return the number of sessions.
+     */
+    public int getSessionStateCount() {
+        return sessionStates.size();
+    }
+
+    /**
+     * Gets the user mode of a session.
+     * @param sessionId the session id.
+     * @return the user mode, or null if none has been chosen.
+     */
+    private UserMode getUserMode(String sessionId) {
+        SessionState state = sessionStates.get(sessionId);
+        if (state == null) {
+            return null;
+        }
+        return state.getUserMode();
+    }
+
+    /**
+     * Gets the result and selection of the last search of a session.
+     * @param sessionId the session id.
+     * @return the selection, or null if there hasn't been any search.
+     */
+    private SlaveSelection getSelection(String sessionId) {
+        SessionState state = sessionStates.get(sessionId);
+        if (state == null) {
+            return null;
+        }
+        return state.getSelection();
     }
 
     /**
@@ -292,7 +360,7 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
      */
     public boolean isConfigureMode() {
         String currentSessionId = Stapler.getCurrentRequest().getSession().getId();
-        return userMode.get(currentSessionId) == CONFIGURE;
+        return getUserMode(currentSessionId) == CONFIGURE;
     }
 
     /**
@@ -301,7 +369,7 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
      */
     public boolean isDeleteMode() {
         String currentSessionId = Stapler.getCurrentRequest().getSession().getId();
-        return userMode.get(currentSessionId) == DELETE;
+        return getUserMode(currentSessionId) == DELETE;
     }
 
     /**
@@ -310,7 +378,7 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
      */
     public boolean isAddMode() {
         String currentSessionId = Stapler.getCurrentRequest().getSession().getId();
-        return userMode.get(currentSessionId) == ADD;
+        return getUserMode(currentSessionId) == ADD;
     }
 
     /**
@@ -319,7 +387,7 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
      */
     public boolean isManageMode() {
         String currentSessionId = Stapler.getCurrentRequest().getSession().getId();
-        return userMode.get(currentSessionId) == MANAGE;
+        return getUserMode(currentSessionId) == MANAGE;
     }
 
 
@@ -354,7 +422,7 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
         Hudson app = Hudson.getInstance();
         // Throws exception on failure. This is handled at a higher level.
         app.checkPermission(getRequiredPermission());
-        userMode.put(req.getSession().getId(), CONFIGURE);
+        sessionStates.getOrCreate(req.getSession()).setUserMode(CONFIGURE);
         if (app.getNodes().isEmpty()) {
             throw new Failure(Messages.EmptyNodeList());
         }
@@ -370,7 +438,7 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
     public void doAddRedirect(StaplerRequest req, StaplerResponse rsp) throws IOException {
         // Throws exception on failure. This is handled at a higher level.
         Hudson.getInstance().checkPermission(getRequiredPermission());
-        userMode.put(req.getSession().getId(), ADD);
+        sessionStates.getOrCreate(req.getSession()).setUserMode(ADD);
         rsp.sendRedirect2("createslaves");
     }
 
@@ -384,7 +452,7 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
         Hudson app = Hudson.getInstance();
         // Throws exception on failure. This is handled at a higher level.
         app.checkPermission(getRequiredPermission());
-        userMode.put(req.getSession().getId(), MANAGE);
+        sessionStates.getOrCreate(req.getSession()).setUserMode(MANAGE);
         if (app.getNodes().isEmpty()) {
             throw new Failure(Messages.EmptyNodeList());
         }
@@ -406,7 +474,7 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
         Hudson app = Hudson.getInstance();
         // Throws exception on failure. This is handled at a higher level.
         app.checkPermission(getRequiredPermission());
-        userMode.put(req.getSession().getId(), DELETE);
+        sessionStates.getOrCreate(req.getSession()).setUserMode(DELETE);
         if (app.getNodes().isEmpty()) {
             throw new Failure(Messages.EmptyNodeList());
         }
@@ -425,29 +493,141 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
 
     /**
      * Searches for slaves.
-     * Also saves the results as a nodelist bound to the sessionid.
+     * Also saves the result as a selection bound to the sessionid, with all matching slaves selected.
+     * The active node list is only set when the selection is submitted, see {@link #doSelectSlaves}.
+     * Not synchronized, the search runs against an immutable snapshot of the node list in the
+     * {@link NodeSearchIndex}, so concurrent searches and changes don't block each other.
+     * Searches that are superseded by a later search from the same session are dropped, see {@link SearchSession}.
      * @param sessionId the current session ID to to place the nodeList with.
      * @param searchParameters JSONObject with information on what to search for.
-     * @return JSONArray with matching slave-representations from the search.
+     * @param limit the maximum number of slaves to return.
+     * @param sequence the sequence number of the search, higher for later searches from the same page.
+     * @return the first page of the result, see {@link SlaveSelection#getPage(int, int)},
+     *         or null if the search was superseded.
+     */
+    @JavaScriptMethod
+    public JSONObject doSearch(String sessionId, JSONObject searchParameters, int limit, long sequence) {
+        // Throws exception on failure. This is handled at a higher level.
+        Hudson.getInstance().checkPermission(getRequiredPermission());
+        SessionState state = sessionStates.getOrCreate(sessionId);
+        SearchSession searchSession = state.getSearchSession();
+        NodeSet result = searchSession.search(sequence, searchParameters);
+        if (result == null) {
+            return null;
+        }
+        SlaveSelection selection = new SlaveSelection(result);
+        //A later search that finished first must not be overwritten.
+        synchronized (searchSession) {
+            if (!searchSession.isLatest(sequence)) {
+                return null;
+            }
+            state.setSelection(selection);
+        }
+        return selection.getPage(0, limit);
+    }
+
+    /**
+     * Gets another page of the last search result.
+     * @param sessionId the current session ID.
+     * @param offset the index of the first slave to return.
+     * @param limit the maximum number of slaves to return.
+     * @return the page, see {@link SlaveSelection#getPage(int, int)}, or null if there was no search.
      */
     @JavaScriptMethod
-    public synchronized JSONArray doSearch(String sessionId, JSONObject searchParameters) {
+    public JSONObject getSearchPage(String sessionId, int offset, int limit) {
         // Throws exception on failure. This is handled at a higher level.
         Hudson.getInstance().checkPermission(getRequiredPermission());
-        NodeList nodeList = SearchSlaves.getNodes(searchParameters);
-        nodeList.sortByName();
-        nodeListMap.put(sessionId, nodeList);
-        return nodeList.toJSONArray();
+        SlaveSelection selection = getSelection(sessionId);
+        if (selection == null) {
+            return null;
+        }
+        return selection.getPage(offset, limit);
     }
 
     /**
-     * Adds all slaves that are checked on the slavefilter page to a NodeList.
+     * Selects or deselects one slave in the last search result.
+     * @param sessionId the current session ID.
+     * @param name the name of the slave.
+     * @param selected true to select it.
+     * @return the number of selected slaves.
+     */
+    @JavaScriptMethod
+    public int setSlaveSelected(String sessionId, String name, boolean selected) {
+        // Throws exception on failure. This is handled at a higher level.
+        Hudson.getInstance().checkPermission(getRequiredPermission());
+        SlaveSelection selection = getSelection(sessionId);
+        if (selection == null) {
+            return 0;
+        }
+        selection.setSelected(name, selected);
+        return selection.getSelectedCount();
+    }
+
+    /**
+     * Selects or deselects all slaves in the last search result, not only the listed ones.
+     * All slaves of a search that timed out can't be selected, since slaves that match it may be missing.
+     * @param sessionId the current session ID.
+     * @param selected true to select all.
+     * @return the number of selected slaves.
+     * @throws Failure if selecting all of a search that timed out.
+     */
+    @JavaScriptMethod
+    public int selectAllSlaves(String sessionId, boolean selected) {
+        // Throws exception on failure. This is handled at a higher level.
+        Hudson.getInstance().checkPermission(getRequiredPermission());
+        SlaveSelection selection = getSelection(sessionId);
+        if (selection == null) {
+            return 0;
+        }
+        if (selected) {
+            checkNotTimedOut(selection);
+        }
+        selection.setAllSelected(selected);
+        return selection.getSelectedCount();
+    }
+
+    /**
+     * Selects the slaves in the last search result that aren't selected, and deselects the ones that are.
+     * Not allowed on a search that timed out, like selecting all.
+     * @param sessionId the current session ID.
+     * @return the number of selected slaves.
+     * @throws Failure if the search timed out.
+     */
+    @JavaScriptMethod
+    public int invertSlaveSelection(String sessionId) {
+        // Throws exception on failure. This is handled at a higher level.
+        Hudson.getInstance().checkPermission(getRequiredPermission());
+        SlaveSelection selection = getSelection(sessionId);
+        if (selection == null) {
+            return 0;
+        }
+        checkNotTimedOut(selection);
+        selection.invertSelection();
+        return selection.getSelectedCount();
+    }
+
+    /**
+     * Checks that the result of a search is complete before acting on all of it.
+     * @param selection the search result and selection.
+     * @throws Failure if the search timed out.
+     */
+    private static void checkNotTimedOut(SlaveSelection selection) {
+        if (selection.isTimedOut()) {
+            throw new Failure(Messages.SearchTimedOut());
+        }
+    }
+
+    /**
+     * Adds all slaves that are selected on the slavefilter page to a NodeList.
+     * The selection of the last search is used, with the checkboxes of the listed page taking precedence.
+     * If the form doesn't list any slaves, only the checked slaves in the form are used.
+     * Proceeding from a search that timed out isn't allowed, since slaves that match it may be missing.
      * @param rsp StaplerRequest
      * @param req StaplerRequest
      * @throws IOException if redirection goes wrong
      * @throws Failure
      */
-    public synchronized void doSelectSlaves(StaplerRequest req, StaplerResponse rsp) throws IOException {
+    public void doSelectSlaves(StaplerRequest req, StaplerResponse rsp) throws IOException {
         Hudson app = Hudson.getInstance();
         // Throws exception on failure. This is handled at a higher level.
         app.checkPermission(getRequiredPermission());
@@ -458,34 +638,40 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
         } catch (ServletException e) {
             throw new Failure(Messages.InvalidSubmittedForm());
         }
+        String currentSessionId = req.getSession().getId();
+        List<String> checkedNames = getNames(json.get("selectedSlaves"));
+        SlaveSelection selection = getSelection(currentSessionId);
+        if (selection != null) {
+            checkNotTimedOut(selection);
+        }
 
-        if (json.get("selectedSlaves") == null) {
+        if (selection != null && json.has("listedSlaves")) {
+            List<String> listedNames = getNames(json.get("listedSlaves"));
+            selection.update(listedNames, checkedNames);
+            checkedNames = new LinkedList<String>();
+            for (Node node : selection.getSelectedNodes()) {
+                checkedNames.add(node.getNodeName());
+            }
+        } else if (json.get("selectedSlaves") == null) {
             throw new Failure(Messages.NoSelectedSlaves());
         }
-        //if more than one slave is selected
-        try {
-            JSONArray selectedSlaves = json.getJSONArray("selectedSlaves");
-            for (Object selectedSlave : selectedSlaves) {
-                String name = selectedSlave.toString();
-                Node node = app.getNode(name);
-                if (node != null) {
-                    newList.add(node);
-                }
-            }
-            //else its just one slave selected
-        } catch (JSONException e) {
-            Node slave = app.getNode(json.getString("selectedSlaves"));
-            if (slave != null) {
-                newList.add(slave);
+
+        for (String name : checkedNames) {
+            Node node = app.getNode(name);
+            if (node != null) {
+                newList.add(node);
             }
         }
-        String currentSessionId = req.getSession().getId();
-        nodeListMap.put(currentSessionId, newList);
-        if (userMode.get(currentSessionId) == CONFIGURE) {
+        if (newList.isEmpty()) {
+            throw new Failure(Messages.NoSelectedSlaves());
+        }
+        SessionState state = sessionStates.getOrCreate(req.getSession());
+        state.setNodeList(newList);
+        if (state.getUserMode() == CONFIGURE) {
             rsp.sendRedirect2("settingsselector");
-        } else if (userMode.get(currentSessionId) == DELETE) {
+        } else if (state.getUserMode() == DELETE) {
             rsp.sendRedirect2("deleteconfirmation");
-        } else if (userMode.get(currentSessionId) == MANAGE) {
+        } else if (state.getUserMode() == MANAGE) {
             rsp.sendRedirect2("manageoptions");
         } else {
             //Redirect to home, so that a user mode can be set
@@ -493,65 +679,105 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
         }
     }
 
+    /**
+     * Narrows the selected slaves down to the ones that have a specific value of a kind of node property,
+     * so that a change can be made to only them. The values are listed on the settings selector page,
+     * see {@link NodeList#getPropertyVariants()}.
+     * @param req StaplerRequest.
+     * @param rsp StaplerResponse.
+     * @param descriptor the class name of the descriptor of the kind of node property.
+     * @param fingerprint the fingerprint of the value.
+     * @throws IOException if redirection goes wrong.
+     * @throws Failure if no slaves are selected, or none of the selected slaves have the value.
+     */
+    public void doSelectPropertyVariant(StaplerRequest req, StaplerResponse rsp,
+                                        @QueryParameter String descriptor, @QueryParameter String fingerprint)
+            throws IOException {
+        // Throws exception on failure. This is handled at a higher level.
+        Hudson.getInstance().checkPermission(getRequiredPermission());
+        SessionState state = sessionStates.getOrCreate(req.getSession());
+        NodeList nodeList = state.getNodeList();
+        if (nodeList == null) {
+            throw new Failure(Messages.NoSelectedSlaves());
+        }
+        NodeList narrowed = nodeList.withPropertyVariant(descriptor, fingerprint);
+        if (narrowed.isEmpty()) {
+            throw new Failure(Messages.NoSelectedSlaves());
+        }
+        state.setNodeList(narrowed);
+        rsp.sendRedirect2("settingsselector");
+    }
+
+    /**
+     * Gets slave names from a submitted form value, a JSONArray when several fields with the same name
+     * were submitted, otherwise a single name.
+     * @param value the submitted value, might be null.
+     * @return the names.
+     */
+    private static List<String> getNames(Object value) {
+        List<String> names = new LinkedList<String>();
+        if (value instanceof JSONArray) {
+            for (Object name : (JSONArray)value) {
+                names.add(name.toString());
+            }
+        } else if (value != null) {
+            names.add(value.toString());
+        }
+        return names;
+    }
+
     /**
      * Applies the settings on the current slaves.
+     * The settings are applied in the background, see {@link ApplyJob}. If that doesn't finish in a few seconds
+     * the user is shown a progress page that moves on when it has finished.
      * @param rsp StaplerRequest.
      * @param req StaplerRequest.
      * @throws IOException if redirection goes wrong.
      * @throws ServletException if something is wrong with the submitted form.
      */
-    public synchronized void doApply(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
+    public void doApply(StaplerRequest req, StaplerResponse rsp) throws IOException, ServletException {
         // Throws exception on failure. This is handled at a higher level.
         Hudson.getInstance().checkPermission(getRequiredPermission());
-        String currentSessionId = req.getSession().getId();
-        NodeList nodeList = getNodeList(currentSessionId);
+        SessionState state = sessionStates.getOrCreate(req.getSession());
+        NodeList nodeList = state.getNodeList();
 
-        HashMap settings;
-        try {
-            settings = NodeList.interpretJSON(req.getSubmittedForm());
-        } catch (ServletException e) {
-            logger.log(Level.WARNING, "Invalid submitted form after editing settings on slaves");
-            throw new Failure(Messages.InvalidSubmittedForm());
-        }
-        UserMode currentUsermode = userMode.get(currentSessionId);
+        HashMap settings = getSubmittedSettings(req, state);
+        UserMode currentUsermode = state.getUserMode();
 
         if (currentUsermode == null) {
             //Redirect to home, so that a user mode can be set
             rsp.sendRedirect2("");
         }
 
-        if (settings.isEmpty() && currentUsermode == CONFIGURE) {
-            throw new Failure(Messages.NoSelectedSettings());
-        }
-        if ((nodeList.slavesStillExist() && currentUsermode == CONFIGURE)
+        if ((nodeList.slavesStillExist() && !state.hasMissingNodes() && currentUsermode == CONFIGURE)
                 || currentUsermode == ADD) {
             //Checks if the labels to remove existed before applying the change,
             //so that the confirmation page can show if the remove was successful:
-            hadLabels.put(req.getSession().getId(), nodeList.hasLabels((String)settings.get("removeLabelString")));
-
-            //Makes sure that Node Properties that are automatically populated and then removed by user from the
-            //setting selector page are not saved when cloning another slave. It works to populate the remove list
-            //since change settings has higher precedence than remove:
-            if (currentUsermode == ADD) {
-                List<String> allProperties = new LinkedList<String>();
-                for (NodePropertyDescriptor descriptor : Jenkins.getInstance().getNodePropertyDescriptors()) {
-                    allProperties.add(descriptor.getClass().getName());
-                }
-                settings.put("removeProperties", allProperties);
-            }
-
-            nodeList = nodeList.changeSettings(settings);
-            nodeListMap.put(currentSessionId, nodeList);
-            lastChangedSettings.put(currentSessionId, settings);
+            state.setHadLabels(nodeList.hasLabels((String)settings.get("removeLabelString")));
 
             if (currentUsermode == CONFIGURE) {
                 //TODO: Structure up these logging messages
                 logger.log(Level.INFO, "User configured the following slaves: " + nodeList.toString() + "\n"
                         + "with the following submitted form containing new settings: " + req.getSubmittedForm());
-                rsp.sendRedirect2("applied");
             } else if (currentUsermode == ADD) {
                 logger.log(Level.INFO, "User added the following slaves: " + nodeList.toString() + "\n"
                         + "with the following submitted form containing new settings: " + req.getSubmittedForm());
+            }
+
+            ApplyJob job = new ApplyJob(nodeList, settings, state, currentUsermode == ADD);
+            state.setApplyJob(job);
+            job.start();
+            boolean finished;
+            try {
+                finished = job.waitFor(APPLY_WAIT);
+            } catch (InterruptedException e) {
+                finished = false;
+            }
+            if (!finished) {
+                rsp.sendRedirect2("applying");
+            } else if (currentUsermode == CONFIGURE) {
+                rsp.sendRedirect2("applied");
+            } else {
                 rsp.sendRedirect2("added");
             }
         } else {
@@ -559,6 +785,105 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
         }
     }
 
+    /**
+     * Interprets the settings submitted from the settings selector page.
+     * @param req StaplerRequest.
+     * @param state the state of the session.
+     * @return the settings, see {@link NodeList#interpretJSON(net.sf.json.JSONObject)}.
+     * @throws Failure if the form is invalid, or if no settings were selected when configuring slaves.
+     */
+    private HashMap getSubmittedSettings(StaplerRequest req, SessionState state) {
+        HashMap settings;
+        try {
+            settings = NodeList.interpretJSON(req.getSubmittedForm());
+        } catch (ServletException e) {
+            logger.log(Level.WARNING, "Invalid submitted form after editing settings on slaves");
+            throw new Failure(Messages.InvalidSubmittedForm());
+        }
+
+        if (settings.isEmpty() && state.getUserMode() == CONFIGURE) {
+            throw new Failure(Messages.NoSelectedSettings());
+        }
+
+        //Makes sure that Node Properties that are automatically populated and then removed by user from the
+        //setting selector page are not saved when cloning another slave. It works to populate the remove list
+        //since change settings has higher precedence than remove:
+        if (state.getUserMode() == ADD) {
+            List<String> allProperties = new LinkedList<String>();
+            for (NodePropertyDescriptor descriptor : Jenkins.getInstance().getNodePropertyDescriptors()) {
+                allProperties.add(descriptor.getClass().getName());
+            }
+            settings.put("removeProperties", allProperties);
+        }
+        return settings;
+    }
+
+    /**
+     * Shows what applying the settings would change on the current slaves, without changing anything.
+     * The changes are worked out in the background, see {@link PreviewJob}, and the preview page
+     * shows them while they are being worked out.
+     * @param rsp StaplerRequest.
+     * @param req StaplerRequest.
+     * @throws IOException if redirection goes wrong.
+     */
+    public void doPreview(StaplerRequest req, StaplerResponse rsp) throws IOException {
+        // Throws exception on failure. This is handled at a higher level.
+        Hudson.getInstance().checkPermission(getRequiredPermission());
+        SessionState state = sessionStates.getOrCreate(req.getSession());
+        HashMap settings = getSubmittedSettings(req, state);
+
+        PreviewJob job = new PreviewJob(state.getNodeList(), settings);
+        state.setPreviewJob(job);
+        job.start();
+        rsp.sendRedirect2("preview");
+    }
+
+    /**
+     * Gets the changes of the last preview of settings, polled by the preview page.
+     * @param sessionId the current session ID.
+     * @param offset the number of changed slaves that the preview page already has.
+     * @return the preview, see {@link PreviewJob#getPreview(int)}, or null if nothing has been previewed.
+     */
+    @JavaScriptMethod
+    public JSONObject getPreview(String sessionId, int offset) {
+        // Throws exception on failure. This is handled at a higher level.
+        Hudson.getInstance().checkPermission(getRequiredPermission());
+        SessionState state = sessionStates.get(sessionId);
+        if (state == null || state.getPreviewJob() == null) {
+            return null;
+        }
+        return state.getPreviewJob().getPreview(offset);
+    }
+
+    /**
+     * Gets the progress of the last apply of settings, polled by the applying page.
+     * @param sessionId the current session ID.
+     * @return the progress, see {@link ApplyJob#getProgress()}, or null if nothing has been applied.
+     */
+    @JavaScriptMethod
+    public JSONObject getApplyProgress(String sessionId) {
+        // Throws exception on failure. This is handled at a higher level.
+        Hudson.getInstance().checkPermission(getRequiredPermission());
+        ApplyJob job = getApplyJob(sessionId);
+        if (job == null) {
+            return null;
+        }
+        return job.getProgress();
+    }
+
+    /**
+     * Gets the last apply of settings. Used by the jelly pages to show failures.
+     * @param sessionId the session id.
+     * @return the job, or null if nothing has been applied.
+     */
+    public ApplyJob getApplyJob(String sessionId) {
+        SessionState state = sessionStates.get(sessionId);
+        if (state == null) {
+            return null;
+        }
+        return state.getApplyJob();
+    }
+
     /**
      * Checks if the used nodelist (by searching for session id) contained the labels to remove before removing them.
      * Used for the confirmation page
@@ -566,44 +891,80 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
      * @return true/false
      */
     public boolean hadLabels(String sessionId) {
-        return hadLabels.get(sessionId);
+        SessionState state = sessionStates.get(sessionId);
+        return state != null && state.getHadLabels();
     }
 
     /**
-     * Deletes the slaves in this list.
+     * Deletes the slaves in this list in the background, see {@link DeleteJob}.
+     * Idle slaves are deleted right away, busy ones are taken offline and deleted when their builds have finished,
+     * or when the timeout has passed. The deleted page shows the progress.
      * @param req StaplerRequest
      * @param rsp StaplerResponse
+     * @param timeout minutes to wait for the builds on busy slaves, 0 to delete them right away.
      * @throws IOException if redirection goes wrong
      */
-    public synchronized void doDeleteSlaves(StaplerRequest req, StaplerResponse rsp) throws IOException {
+    public void doDeleteSlaves(StaplerRequest req, StaplerResponse rsp, @QueryParameter String timeout)
+        throws IOException {
         Hudson app = Hudson.getInstance();
         // Throws exception on failure. This is handled at a higher level.
         app.checkPermission(getRequiredPermission());
-        String currentSessionId = req.getSession().getId();
-        NodeList nodeList = getNodeList(currentSessionId);
+        SessionState state = sessionStates.getOrCreate(req.getSession());
+        NodeList nodeList = state.getNodeList();
 
-        StringBuffer failedSlavesBuffer = new StringBuffer();
-        NodeList failedSlavesList = new NodeList();
-        for (Node node : nodeList) {
-            try {
-                app.removeNode(node);
-            } catch (IOException e) {
-                failedSlavesList.add(node);
-                failedSlavesBuffer.append(node.getNodeName()).append(" cause: ");
-                failedSlavesBuffer.append(e.getMessage()).append(" ");
-            }
+        int minutes = Math.max(0, Util.tryParseNumber(timeout, DELETE_TIMEOUT_MINUTES).intValue());
+        logger.log(Level.CONFIG, "User deleted the following slaves: " + nodeList.toString());
+        DeleteJob job = new DeleteJob(nodeList, TimeUnit.MINUTES.toMillis(minutes));
+        state.setDeleteJob(job);
+        job.start();
+        boolean finished;
+        try {
+            finished = job.waitFor(APPLY_WAIT);
+        } catch (InterruptedException e) {
+            finished = false;
         }
-        String failedSlaves = failedSlavesBuffer.toString();
-        if (!failedSlavesList.isEmpty()) {
-            logger.log(Level.WARNING, Messages.CouldNotDelete(failedSlaves));
-            throw new Failure(Messages.CouldNotDelete(failedSlavesList.toString()));
+        RemovalResult result = job.getResult();
+        if (finished && !result.isSuccessful()) {
+            StringBuilder failedSlaves = new StringBuilder();
+            for (Map.Entry<String, String> failure : result.getFailures().entrySet()) {
+                failedSlaves.append(failure.getKey()).append(" cause: ").append(failure.getValue()).append(" ");
+            }
+            logger.log(Level.WARNING, Messages.CouldNotDelete(failedSlaves.toString()));
+            throw new Failure(Messages.CouldNotDelete(Util.join(result.getFailures().keySet(), " ")));
         }
-        logger.log(Level.CONFIG, "User deleted the following slaves: " + nodeList.toString());
+        //Kept as they are, so that the deleted page lists busy slaves as well after they have been removed.
+        state.setDetachedNodeList(nodeList);
         rsp.sendRedirect2("deleted");
     }
 
+    /**
+     * The default timeout for busy slaves, shown on the delete confirmation page.
+     * @return the number of minutes.
+     */
+    public int getDeleteTimeoutMinutes() {
+        return DELETE_TIMEOUT_MINUTES;
+    }
+
+    /**
+     * Gets the progress of the last deletion of slaves, polled by the deleted page.
+     * @param sessionId the current session ID.
+     * @return the progress, see {@link DeleteJob#getProgress()}, or null if nothing has been deleted.
+     */
+    @JavaScriptMethod
+    public JSONObject getDeleteProgress(String sessionId) {
+        // Throws exception on failure. This is handled at a higher level.
+        Hudson.getInstance().checkPermission(getRequiredPermission());
+        SessionState state = sessionStates.get(sessionId);
+        if (state == null || state.getDeleteJob() == null) {
+            return null;
+        }
+        return state.getDeleteJob().getProgress();
+    }
+
     /**
      * Adds the slaves to create to the current NodeList.
+     * The slaves are built one after another on the request thread, see {@link SlaveTemplate#createAll(Iterable)},
+     * and are added to Jenkins all at once when the settings are applied.
      * @param rsp StaplerResponse.
      * @param req StaplerRequest.
      * @param slaveNames string with several names separated by space.
@@ -617,31 +978,24 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
      * @throws Descriptor.FormException if slave creation goes wrong.
      * @throws Failure
      */
-    public synchronized void doCreateSlaves(StaplerRequest req, StaplerResponse rsp,
-                                            @QueryParameter String slaveNames, @QueryParameter String slaveName,
-                                            @QueryParameter String mode, @QueryParameter String first,
-                                            @QueryParameter String last, @QueryParameter String copyFrom,
-                                            @QueryParameter boolean extendedEnvInterpretation)
+    public void doCreateSlaves(StaplerRequest req, StaplerResponse rsp,
+                               @QueryParameter String slaveNames, @QueryParameter String slaveName,
+                               @QueryParameter String mode, @QueryParameter String first,
+                               @QueryParameter String last, @QueryParameter String copyFrom,
+                               @QueryParameter boolean extendedEnvInterpretation)
             throws IOException, Descriptor.FormException {
         Hudson app = Hudson.getInstance();
         // Throws exception on failure. This is handled at a higher level.
         app.checkPermission(getRequiredPermission());
-        NodeList nodeList = new NodeList();
-        String currentSessionId = req.getSession().getId();
-
         HashSet<String> names = getSlaveNames(slaveNames, slaveName, first, last);
 
         if (names == null || names.isEmpty()) {
             throw new Failure(Messages.EmptyNameList());
         }
 
+        SlaveTemplate template;
         if (mode != null && mode.equals("newSlave")) {
-            for (String currentName : names) {
-                DumbSlave slave = new DumbSlave(currentName, "", "", "", Node.Mode.NORMAL, "",
-                        new ManagedWindowsServiceLauncher("", ""), new RetentionStrategy.Always(),
-                        Collections.EMPTY_LIST);
-                nodeList.add(slave);
-            }
+            template = SlaveTemplate.newSlave();
         } else if (mode != null && mode.equals("copySlave")) {
             Node src = app.getNode(copyFrom);
             if (src == null) {
@@ -654,73 +1008,112 @@ public class NodeManageLink extends ManagementLink implements Describable<NodeMa
             if (extendedEnvInterpretation) {
                 src = EnvironmentVariables.toVariables((DumbSlave)src);
             }
-            for (String currentName : names) {
-                DumbSlave copiedSlave = new DumbSlave(currentName, src.getNodeDescription(),
-                        ((DumbSlave)src).getRemoteFS(), String.valueOf(src.getNumExecutors()), src.getMode(),
-                        src.getLabelString(), ((DumbSlave)src).getLauncher(), ((DumbSlave)src).getRetentionStrategy(),
-                        src.getNodeProperties().toList());
-                copiedSlave = EnvironmentVariables.fromVariables(copiedSlave);
-                nodeList.add(copiedSlave);
-            }
+            template = SlaveTemplate.copyOf((DumbSlave)src);
         } else {
             rsp.sendError(SC_BAD_REQUEST);
             return;
         }
-        nodeListMap.put(currentSessionId, nodeList);
+
+        CreationResult created = template.createAll(names);
+        if (!created.isSuccessful()) {
+            throw new Failure(Util.join(created.getFailures().values(), " "));
+        }
+        NodeList nodeList = created.getCreated();
+        sessionStates.getOrCreate(req.getSession()).setNodeList(nodeList);
         rsp.sendRedirect2("settingsselector");
     }
 
     /**
      * Calculates all new node names and returns them as a set.
-     * @param slaveNames specific node names that is separated with space.
+     * The names can contain ranges, see {@link NameExpression}. Ranges and the span are produced one name at a
+     * time, see {@link NameRange}. Together they can have at most {@link NameRange#MAX_NAMES} names, which is
+     * counted before any name is produced, and they are checked against the registered nodes before any of the
+     * names are kept.
+     * @param slaveNames specific node names, or name expressions, that are separated with space.
      * @param nodeName  contains a node name in a specific interval.
      * @param first the first node in a interval
      * @param last the last node in a interval
-     * @return the names separated in an array
-     * @throws Failure
+     * @return the names, in the order they were given
+     * @throws Failure if a name is bad, the interval is wrong or too large, or some of the slaves already exist.
      */
     public static HashSet<String> getSlaveNames(String slaveNames, String nodeName, String first, String last) {
-        HashSet<String> names = new HashSet<String>();
-
+        List<Iterable<String>> parts = new ArrayList<Iterable<String>>();
+        long total = 0;
         if (slaveNames != null && !slaveNames.isEmpty()) {
             //Throws Failure if not good names:
             Hudson.checkGoodName(slaveNames);
-            String[] uniqueNames = slaveNames.split("\\s+");
-            Collections.addAll(names, uniqueNames);
+            for (String expression : slaveNames.trim().split("\\s+")) {
+                if (!expression.isEmpty()) {
+                    NameExpression parsed = NameExpression.parse(expression);
+                    total = addSize(total, parsed.size());
+                    parts.add(parsed);
+                }
+            }
         }
         if (nodeName != null && !nodeName.isEmpty()) {
             Hudson.checkGoodName(nodeName);
-            //The length before parsing to int with zeros at the beginning of the string counted
-            int preLength = first.length();
-            int firstInt;
-            int lastInt;
+            NameRange range = NameRange.parse(nodeName, first, last);
+            total = addSize(total, range.size());
+            parts.add(range);
+        }
+        if (total > NameRange.MAX_NAMES) {
+            throw new Failure(Messages.TooManySlaves(total, NameRange.MAX_NAMES));
+        }
+        checkNotExisting(parts);
 
-            try {
-                firstInt = Integer.parseInt(first);
-                lastInt = Integer.parseInt(last);
-            } catch (NumberFormatException e) {
-                throw new Failure(Messages.WrongIntervalString(nodeName, first, last));
-            }
-            if (firstInt > lastInt) {
-                throw new Failure(Messages.WrongIntervalString(nodeName, first, last));
+        LinkedHashSet<String> names = new LinkedHashSet<String>();
+        for (Iterable<String> part : parts) {
+            for (String name : part) {
+                names.add(name);
             }
+        }
+        return names;
+    }
 
-            for (int i = firstInt; i <= lastInt; i++) {
-                //Add the new name and the missing zeros from the parsed int
-                names.add(nodeName + String.format("%0" + preLength + "d", i));
-            }
+    /**
+     * Adds the size of a part of the names to the total, without overflowing.
+     * @param total the size of the earlier parts.
+     * @param size the size of the part.
+     * @return the sum, or {@link Long#MAX_VALUE} if it is larger.
+     */
+    private static long addSize(long total, long size) {
+        if (size > Long.MAX_VALUE - total) {
+            return Long.MAX_VALUE;
         }
+        return total + size;
+    }
 
-        StringBuffer existingNames = new StringBuffer();
-        for (String name : names) {
-            if (Hudson.getInstance().getNode(name) != null) {
-                existingNames.append(name).append(" ");
+    /**
+     * Checks that none of the names are taken by registered nodes, in one pass over the names as they are
+     * produced, without keeping them.
+     * When many names are taken only the first few are listed in the error.
+     * @param parts the names of the slaves to create, in parts like the ranges they were written as.
+     * @throws Failure if some of the slaves already exist.
+     */
+    static void checkNotExisting(List<? extends Iterable<String>> parts) {
+        List<Node> nodes = Hudson.getInstance().getNodes();
+        Set<String> registered = new HashSet<String>(nodes.size() * 2);
+        for (Node node : nodes) {
+            registered.add(node.getNodeName());
+        }
+        List<String> existing = new ArrayList<String>(MAX_LISTED_NAMES);
+        int existingCount = 0;
+        for (Iterable<String> names : parts) {
+            for (String name : names) {
+                if (registered.contains(name)) {
+                    if (existingCount < MAX_LISTED_NAMES) {
+                        existing.add(name);
+                    }
+                    existingCount++;
+                }
             }
         }
-        if (existingNames.length() > 0) {
-            throw new Failure(Messages.SlaveAlreadyExist(existingNames));
+        if (existingCount > MAX_LISTED_NAMES) {
+            throw new Failure(Messages.SomeSlavesAlreadyExist(existingCount, Util.join(existing, " "),
+                    existingCount - MAX_LISTED_NAMES));
+        } else if (existingCount > 0) {
+            throw new Failure(Messages.SlaveAlreadyExist(Util.join(existing, " ")));
         }
-        return names;
     }
 
     /**
@@ -0,0 +1,597 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.model.Hudson;
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.labels.LabelAtom;
+import hudson.model.labels.LabelExpression;
+import hudson.slaves.ComputerListener;
+import hudson.slaves.DumbSlave;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory inverted index over the Jenkins registered dumb slaves, used by {@link SearchSlaves}.
+ * For every searchable field the index keeps postings of all n-grams (up to {@link #GRAM_LENGTH} characters) of
+ * every whitespace separated token, both as written and with environment variables switched in, so that a search
+ * only has to look at the slaves that can possibly match instead of scanning the whole node list.
+ * The labels of every slave, including the name of the slave as Jenkins does, are also kept as one bit set per
+ * label, so that label expressions are answered with bit set operations.
+ * The slaves are numbered in name order, these ordinals are what search results and selections are made of,
+ * see {@link NodeSet}.
+ * The index is immutable, it is rebuilt lazily when the node list of Jenkins has changed.
+ */
+public final class NodeSearchIndex {
+
+    /**
+     * The longest n-gram kept in the postings.
+     */
+    static final int GRAM_LENGTH = 3;
+
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+    private static volatile NodeSearchIndex current;
+
+    private final long generation = GENERATIONS.incrementAndGet();
+    private final List<Node> source;
+    private final DumbSlave[] slaves;
+    private final String[] names;
+    private final Map<Field, Map<String, int[]>> postings = new EnumMap<Field, Map<String, int[]>>(Field.class);
+    private final Map<String, Integer> ordinalsByName = new HashMap<String, Integer>();
+    private final Map<Integer, int[]> ordinalsByExecutors = new HashMap<Integer, int[]>();
+    private final Map<String, BitSet> ordinalsByLabel = new HashMap<String, BitSet>();
+
+    /**
+     * The text fields that are indexed.
+     */
+    public enum Field {
+        /**
+         * The node name.
+         */
+        NAME("name") {
+            @Override
+            String getValue(DumbSlave slave) {
+                return slave.getNodeName();
+            }
+        },
+        /**
+         * The label string.
+         */
+        LABELS("labels") {
+            @Override
+            String getValue(DumbSlave slave) {
+                return slave.getLabelString();
+            }
+        },
+        /**
+         * The remote FS root.
+         */
+        REMOTE_FS("remoteFS") {
+            @Override
+            String getValue(DumbSlave slave) {
+                return slave.getRemoteFS();
+            }
+        },
+        /**
+         * The description.
+         */
+        DESCRIPTION("description") {
+            @Override
+            String getValue(DumbSlave slave) {
+                return slave.getNodeDescription();
+            }
+        };
+
+        private final String parameterName;
+
+        /**
+         * Standard constructor.
+         * @param parameterName the name of the search parameter for this field.
+         */
+        Field(String parameterName) {
+            this.parameterName = parameterName;
+        }
+
+        /**
+         * The name of the search parameter, as sent from the slave filter page, for this field.
+         * @return the parameter name.
+         */
+        public String getParameterName() {
+            return parameterName;
+        }
+
+        /**
+         * Gets the value of this field on a specific slave.
+         * @param slave the slave.
+         * @return the value, might be null.
+         */
+        abstract String getValue(DumbSlave slave);
+    }
+
+    /**
+     * Builds a new index over the dumb slaves in the given node list.
+     * @param nodes the nodes to index.
+     */
+    NodeSearchIndex(List<Node> nodes) {
+        this.source = new ArrayList<Node>(nodes);
+        List<DumbSlave> slaveList = new ArrayList<DumbSlave>();
+        for (Node node : nodes) {
+            if (node instanceof DumbSlave) {
+                slaveList.add((DumbSlave)node);
+            }
+        }
+        Collections.sort(slaveList, new Comparator<DumbSlave>() {
+            @Override
+            public int compare(DumbSlave s1, DumbSlave s2) {
+                return Util.fixNull(s1.getNodeName()).compareTo(Util.fixNull(s2.getNodeName()));
+            }
+        });
+        slaves = slaveList.toArray(new DumbSlave[slaveList.size()]);
+        names = new String[slaves.length];
+
+        Map<Field, Map<String, IntList>> building = new EnumMap<Field, Map<String, IntList>>(Field.class);
+        for (Field field : Field.values()) {
+            building.put(field, new HashMap<String, IntList>());
+        }
+        Map<Integer, IntList> executors = new HashMap<Integer, IntList>();
+        Set<String> grams = new HashSet<String>();
+
+        for (int ordinal = 0; ordinal < slaves.length; ordinal++) {
+            DumbSlave slave = slaves[ordinal];
+            names[ordinal] = slave.getNodeName();
+            ordinalsByName.put(slave.getNodeName(), ordinal);
+            append(executors, slave.getNumExecutors(), ordinal);
+            setLabel(slave.getNodeName(), ordinal);
+
+            for (Field field : Field.values()) {
+                String value = Util.fixNull(field.getValue(slave));
+                if (field == Field.LABELS) {
+                    for (String label : LabelSet.parse(value).getLabels()) {
+                        setLabel(label, ordinal);
+                    }
+                }
+                grams.clear();
+                addGrams(SearchSlaves.makeSearchable(value), grams);
+                addGrams(SearchSlaves.makeSearchable(EnvironmentVariables.toVariables(slave, value)), grams);
+                Map<String, IntList> fieldPostings = building.get(field);
+                for (String gram : grams) {
+                    append(fieldPostings, gram, ordinal);
+                }
+            }
+        }
+
+        for (Map.Entry<Field, Map<String, IntList>> entry : building.entrySet()) {
+            Map<String, int[]> fieldPostings = new HashMap<String, int[]>(entry.getValue().size());
+            for (Map.Entry<String, IntList> gram : entry.getValue().entrySet()) {
+                fieldPostings.put(gram.getKey(), gram.getValue().toArray());
+            }
+            postings.put(entry.getKey(), fieldPostings);
+        }
+        for (Map.Entry<Integer, IntList> entry : executors.entrySet()) {
+            ordinalsByExecutors.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    /**
+     * Gets the index over the current Jenkins node list, building a new one if the node list has changed since
+     * the last time.
+     * @return the index.
+     */
+    public static NodeSearchIndex getIndex() {
+        List<Node> nodes = Hudson.getInstance().getNodes();
+        NodeSearchIndex index = current;
+        if (index == null || !index.isBuiltFrom(nodes)) {
+            index = new NodeSearchIndex(nodes);
+            current = index;
+        }
+        return index;
+    }
+
+    /**
+     * Throws away the current index, the next search will build a new one.
+     */
+    public static void invalidate() {
+        current = null;
+    }
+
+    /**
+     * Checks if this index was built from the same nodes as in the given list.
+     * @param nodes the node list to compare with.
+     * @return true if the nodes are the same instances, in the same order.
+     */
+    boolean isBuiltFrom(List<Node> nodes) {
+        if (source.size() != nodes.size()) {
+            return false;
+        }
+        for (int i = 0; i < nodes.size(); i++) {
+            if (source.get(i) != nodes.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tells this index apart from the indexes built before and after it, without holding on to any of them.
+     * @return a number that is higher for later indexes.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * The names of the indexed slaves by ordinal, in name order. The array is shared and must not be changed.
+     * It lets ordinals be kept without holding on to the index and its slaves, see {@link SlaveSelection}.
+     * @return the names.
+     */
+    String[] getNames() {
+        return names;
+    }
+
+    /**
+     * The number of indexed slaves.
+     * @return the size.
+     */
+    public int size() {
+        return slaves.length;
+    }
+
+    /**
+     * Gets the slave with the given ordinal.
+     * @param ordinal the position of the slave in the index.
+     * @return the slave.
+     */
+    public DumbSlave getSlave(int ordinal) {
+        return slaves[ordinal];
+    }
+
+    /**
+     * Gets the ordinal of the slave with the given name.
+     * @param name the full name of the slave.
+     * @return the position of the slave in the index, or -1 if there is no such slave.
+     */
+    public int getOrdinal(String name) {
+        Integer ordinal = ordinalsByName.get(name);
+        if (ordinal == null) {
+            return -1;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Gets the ordinals of all slaves that could match the given search string on a field.
+     * The returned slaves are not guaranteed to match, only the ones left out are guaranteed not to.
+     * @param field the field to search in.
+     * @param searchString the search string, whitespace separated tokens that all have to be found.
+     * @return sorted ordinals, or null if the search string doesn't narrow the search.
+     */
+    public int[] getCandidates(Field field, String searchString) {
+        if (searchString == null || searchString.isEmpty()) {
+            return null;
+        }
+        String searchable = SearchSlaves.makeSearchable(searchString);
+        if (searchable.isEmpty()) {
+            return null;
+        }
+        Map<String, int[]> fieldPostings = postings.get(field);
+        int[] result = null;
+        for (String token : searchable.split("\\s+")) {
+            int[] tokenCandidates;
+            if (token.length() <= GRAM_LENGTH) {
+                tokenCandidates = get(fieldPostings, token);
+            } else {
+                tokenCandidates = null;
+                for (int i = 0; i + GRAM_LENGTH <= token.length(); i++) {
+                    tokenCandidates = intersect(tokenCandidates,
+                            get(fieldPostings, token.substring(i, i + GRAM_LENGTH)));
+                    if (tokenCandidates.length == 0) {
+                        break;
+                    }
+                }
+            }
+            result = intersect(result, tokenCandidates);
+            if (result.length == 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the ordinals of all slaves with the given number of executors.
+     * @param numExecutors the number of executors.
+     * @return sorted ordinals.
+     */
+    public int[] getCandidatesByExecutors(int numExecutors) {
+        return get(ordinalsByExecutors, numExecutors);
+    }
+
+    /**
+     * Gets the ordinals of all slaves with one of the given names.
+     * @param names the full names of the slaves.
+     * @return sorted ordinals.
+     */
+    public int[] getCandidatesByNames(Collection<String> names) {
+        IntList list = new IntList();
+        for (String name : names) {
+            Integer ordinal = ordinalsByName.get(name);
+            if (ordinal != null) {
+                list.add(ordinal);
+            }
+        }
+        int[] result = list.toArray();
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Gets the ordinals of all slaves matching a label expression, see {@link hudson.model.Label#parseExpression}.
+     * The expression is evaluated with bit set operations over the slaves that have each label atom.
+     * @param expression the parsed label expression.
+     * @return sorted ordinals, or null if the expression contains operators that the index doesn't know about.
+     */
+    public int[] getCandidatesByLabel(Label expression) {
+        BitSet matching = evaluate(expression);
+        if (matching == null) {
+            return null;
+        }
+        int[] result = new int[matching.cardinality()];
+        int i = 0;
+        for (int ordinal = matching.nextSetBit(0); ordinal >= 0; ordinal = matching.nextSetBit(ordinal + 1)) {
+            result[i++] = ordinal;
+        }
+        return result;
+    }
+
+    /**
+     * Evaluates a label expression over the label bit sets.
+     * @param expression the label expression.
+     * @return a new bit set with the ordinals of the matching slaves, or null if the expression can't be evaluated.
+     */
+    private BitSet evaluate(Label expression) {
+        if (expression instanceof LabelAtom) {
+            BitSet matching = new BitSet(slaves.length);
+            BitSet labelled = ordinalsByLabel.get(expression.getName());
+            if (labelled != null) {
+                matching.or(labelled);
+            }
+            return matching;
+        } else if (expression instanceof LabelExpression.Paren) {
+            return evaluate(((LabelExpression.Paren)expression).base);
+        } else if (expression instanceof LabelExpression.Not) {
+            BitSet matching = evaluate(((LabelExpression.Not)expression).base);
+            if (matching != null) {
+                matching.flip(0, slaves.length);
+            }
+            return matching;
+        } else if (expression instanceof LabelExpression.BinaryOperator) {
+            BitSet left = evaluate(((LabelExpression.BinaryOperator)expression).lhs);
+            BitSet right = evaluate(((LabelExpression.BinaryOperator)expression).rhs);
+            if (left == null || right == null) {
+                return null;
+            }
+            if (expression instanceof LabelExpression.And) {
+                left.and(right);
+            } else if (expression instanceof LabelExpression.Or) {
+                left.or(right);
+            } else if (expression instanceof LabelExpression.Implies) {
+                left.flip(0, slaves.length);
+                left.or(right);
+            } else if (expression instanceof LabelExpression.Iff) {
+                left.xor(right);
+                left.flip(0, slaves.length);
+            } else {
+                return null;
+            }
+            return left;
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the slave with the given ordinal matches a label expression, using the label bit sets.
+     * @param expression the parsed label expression.
+     * @param ordinal the position of the slave in the index.
+     * @return if it matches, or null if the expression contains operators that the index doesn't know about.
+     */
+    public Boolean matchesLabel(Label expression, int ordinal) {
+        if (expression instanceof LabelAtom) {
+            BitSet labelled = ordinalsByLabel.get(expression.getName());
+            return labelled != null && labelled.get(ordinal);
+        } else if (expression instanceof LabelExpression.Paren) {
+            return matchesLabel(((LabelExpression.Paren)expression).base, ordinal);
+        } else if (expression instanceof LabelExpression.Not) {
+            Boolean matching = matchesLabel(((LabelExpression.Not)expression).base, ordinal);
+            if (matching == null) {
+                return null;
+            }
+            return !matching;
+        } else if (expression instanceof LabelExpression.BinaryOperator) {
+            Boolean left = matchesLabel(((LabelExpression.BinaryOperator)expression).lhs, ordinal);
+            Boolean right = matchesLabel(((LabelExpression.BinaryOperator)expression).rhs, ordinal);
+            if (left == null || right == null) {
+                return null;
+            }
+            if (expression instanceof LabelExpression.And) {
+                return left && right;
+            } else if (expression instanceof LabelExpression.Or) {
+                return left || right;
+            } else if (expression instanceof LabelExpression.Implies) {
+                return !left || right;
+            } else if (expression instanceof LabelExpression.Iff) {
+                return left.booleanValue() == right.booleanValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Intersects two sorted ordinal arrays, where null represents all ordinals.
+     * @param first the first array, or null.
+     * @param second the second array, or null.
+     * @return the intersection, null only if both arguments were null.
+     */
+    static int[] intersect(int[] first, int[] second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        IntList result = new IntList();
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result.add(first[i]);
+                i++;
+                j++;
+            }
+        }
+        return result.toArray();
+    }
+
+    /**
+     * Adds all n-grams of the whitespace separated tokens in a string.
+     * @param searchable the string, already made searchable.
+     * @param grams the set to add the n-grams to.
+     */
+    private static void addGrams(String searchable, Set<String> grams) {
+        if (searchable == null || searchable.isEmpty()) {
+            return;
+        }
+        for (String token : searchable.split("\\s+")) {
+            for (int start = 0; start < token.length(); start++) {
+                int end = Math.min(token.length(), start + GRAM_LENGTH);
+                for (int i = start + 1; i <= end; i++) {
+                    grams.add(token.substring(start, i));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the postings of a key, or an empty array if there are none.
+     * @param map the postings.
+     * @param key the key.
+     * @param <K> the key type.
+     * @return the postings.
+     */
+    private static <K> int[] get(Map<K, int[]> map, K key) {
+        int[] ordinals = map.get(key);
+        if (ordinals == null) {
+            return new int[0];
+        }
+        return ordinals;
+    }
+
+    /**
+     * Marks a slave as having a label.
+     * @param label the label.
+     * @param ordinal the ordinal of the slave.
+     */
+    private void setLabel(String label, int ordinal) {
+        BitSet labelled = ordinalsByLabel.get(label);
+        if (labelled == null) {
+            labelled = new BitSet(slaves.length);
+            ordinalsByLabel.put(label, labelled);
+        }
+        labelled.set(ordinal);
+    }
+
+    /**
+     * Appends an ordinal to the postings of a key.
+     * @param map the postings being built.
+     * @param key the key.
+     * @param ordinal the ordinal to append.
+     * @param <K> the key type.
+     */
+    private static <K> void append(Map<K, IntList> map, K key, int ordinal) {
+        IntList list = map.get(key);
+        if (list == null) {
+            list = new IntList();
+            map.put(key, list);
+        }
+        list.add(ordinal);
+    }
+
+    /**
+     * Growable list of primitive ints.
+     */
+    static final class IntList {
+        private static final int INITIAL_CAPACITY = 4;
+        private int[] values = new int[INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * Appends a value.
+         * @param value the value.
+         */
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Copies the values to an array of the exact size.
+         * @return the values.
+         */
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Throws away the index when nodes are added, removed or reconfigured.
+     */
+    @Extension
+    public static class InvalidationListener extends ComputerListener {
+        @Override
+        public void onConfigurationChange() {
+            invalidate();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import java.util.BitSet;
+
+/**
+ * An immutable set of slaves in a {@link NodeSearchIndex}, stored as a bit set over the ordinals of the index.
+ * Search results are kept like this instead of as lists of nodes, so that only one bit per slave is needed,
+ * and the selection in a result can be kept as a bit set as well.
+ * A set holds on to its index, so sessions only keep the bits, see {@link SlaveSelection} and {@link SearchSession}.
+ * Iterating over the set gives the slaves in name order, like the ordinals.
+ */
+public final class NodeSet {
+
+    private final NodeSearchIndex index;
+    private final BitSet ordinals;
+    private final boolean timedOut;
+
+    /**
+     * Standard constructor.
+     * @param index the index that the ordinals are from.
+     * @param ordinals the ordinals of the slaves in the set, not shared with anyone else.
+     */
+    NodeSet(NodeSearchIndex index, BitSet ordinals) {
+        this(index, ordinals, false);
+    }
+
+    /**
+     * Constructor for search results.
+     * @param index the index that the ordinals are from.
+     * @param ordinals the ordinals of the slaves in the set, not shared with anyone else.
+     * @param timedOut true if the search gave up before looking at all slaves, see {@link SearchQuery#isTimedOut()}.
+     */
+    NodeSet(NodeSearchIndex index, BitSet ordinals, boolean timedOut) {
+        this.index = index;
+        this.ordinals = ordinals;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * The index that the ordinals of this set are from.
+     * @return the index.
+     */
+    public NodeSearchIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Checks if this set is the incomplete result of a search that gave up.
+     * @return true if slaves that match the search may be missing.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * The number of slaves in this set.
+     * @return the size.
+     */
+    public int size() {
+        return ordinals.cardinality();
+    }
+
+    /**
+     * Checks if this set is empty.
+     * @return true if there are no slaves in it.
+     */
+    public boolean isEmpty() {
+        return ordinals.isEmpty();
+    }
+
+    /**
+     * Checks if a slave is in this set.
+     * @param ordinal the ordinal of the slave in the index.
+     * @return true if it is.
+     */
+    public boolean contains(int ordinal) {
+        return ordinal >= 0 && ordinals.get(ordinal);
+    }
+
+    /**
+     * Gets the next slave in this set.
+     * @param from the ordinal to start looking from.
+     * @return the ordinal of the first slave in the set at or after from, or -1 if there is none.
+     */
+    public int nextOrdinal(int from) {
+        return ordinals.nextSetBit(from);
+    }
+
+    /**
+     * Copies the ordinals of this set.
+     * @return a new bit set that can be changed without changing this set.
+     */
+    BitSet toBitSet() {
+        return (BitSet)ordinals.clone();
+    }
+
+    /**
+     * Gets a part of the slaves in this set as a list.
+     * @param offset the number of slaves to skip.
+     * @param limit the maximum number of slaves in the list.
+     * @return the slaves, in name order.
+     */
+    public NodeList toNodeList(int offset, int limit) {
+        NodeList nodeList = new NodeList();
+        int skipped = 0;
+        for (int ordinal = ordinals.nextSetBit(0); ordinal >= 0 && nodeList.size() < limit;
+             ordinal = ordinals.nextSetBit(ordinal + 1)) {
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                nodeList.add(index.getSlave(ordinal));
+            }
+        }
+        return nodeList;
+    }
+
+    /**
+     * Gets the slaves in this set as a list.
+     * @return the slaves, in name order.
+     */
+    public NodeList toNodeList() {
+        return toNodeList(0, Integer.MAX_VALUE);
+    }
+}
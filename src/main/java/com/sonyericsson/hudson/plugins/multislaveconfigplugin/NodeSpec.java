@@ -0,0 +1,394 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.Util;
+import hudson.model.Describable;
+import hudson.model.Descriptor;
+import hudson.model.Failure;
+import hudson.model.Node;
+import hudson.slaves.CommandLauncher;
+import hudson.slaves.ComputerLauncher;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.RetentionStrategy;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The configuration of a DumbSlave that is being changed or created.
+ * All changes, including switching from environment variables, are made to this mutable spec,
+ * so that only one DumbSlave needs to be created per slave with {@link #build()}.
+ */
+public class NodeSpec {
+
+    private static final Logger logger = Logger.getLogger(NodeSpec.class.getName());
+
+    private final String name;
+    private String description;
+    private String remoteFS;
+    private String numExecutors;
+    private Node.Mode mode;
+    private String labelString;
+    private ComputerLauncher launcher;
+    private RetentionStrategy retentionStrategy;
+    private List<NodeProperty<?>> nodeProperties;
+
+    /**
+     * Creates an empty spec.
+     * @param name the name of the slave.
+     */
+    public NodeSpec(String name) {
+        this.name = name;
+        this.nodeProperties = new ArrayList<NodeProperty<?>>();
+    }
+
+    /**
+     * Creates a spec with the configuration of an existing slave.
+     * @param slave the slave.
+     * @return the spec.
+     */
+    public static NodeSpec of(DumbSlave slave) {
+        return copyOf(slave.getNodeName(), slave);
+    }
+
+    /**
+     * Creates a spec with the configuration of an existing slave, but with another name.
+     * @param name the name of the new slave.
+     * @param template the slave to copy the configuration from.
+     * @return the spec.
+     */
+    public static NodeSpec copyOf(String name, DumbSlave template) {
+        NodeSpec spec = new NodeSpec(name);
+        spec.description = template.getNodeDescription();
+        spec.remoteFS = template.getRemoteFS();
+        spec.numExecutors = String.valueOf(template.getNumExecutors());
+        spec.mode = template.getMode();
+        spec.labelString = template.getLabelString();
+        spec.launcher = template.getLauncher();
+        spec.retentionStrategy = template.getRetentionStrategy();
+        spec.nodeProperties = new ArrayList<NodeProperty<?>>(template.getNodeProperties().toList());
+        return spec;
+    }
+
+    /**
+     * Switches from environment variables, like $NAME, in the description, remote FS, labels and launcher.
+     * @return this spec.
+     */
+    public NodeSpec fromVariables() {
+        description = EnvironmentVariables.fromVariables(name, description);
+        remoteFS = EnvironmentVariables.fromVariables(name, remoteFS);
+        labelString = EnvironmentVariables.fromVariables(name, labelString);
+        launcher = EnvironmentVariables.fromVariables(name, launcher);
+        return this;
+    }
+
+    /**
+     * Creates the slave.
+     * @return the slave.
+     * @throws Failure if the slave couldn't be created.
+     */
+    public DumbSlave build() {
+        try {
+            return new DumbSlave(name, description, remoteFS, numExecutors, mode, labelString, launcher,
+                    retentionStrategy, nodeProperties);
+        } catch (Descriptor.FormException e) {
+            logger.log(Level.WARNING, "Failed to edit slave " + name + " cause: " + e.getMessage());
+            throw new Failure(Messages.FailedToEditSlave(name));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to edit slave " + name + " cause: " + e.getMessage());
+            throw new Failure(Messages.FailedToEditSlave(name));
+        }
+    }
+
+    /**
+     * Checks if building this spec would give a slave with the same configuration as an existing one.
+     * Values are compared the way the slave stores them, so that for example adding a label that the slave
+     * already has doesn't count as a change. Launchers, availabilities and properties that aren't the same
+     * instances are compared by their {@link ConfigurationFingerprint}s. Call {@link #fromVariables()} first.
+     * @param slave the slave to compare with.
+     * @return true if nothing would change.
+     */
+    public boolean isUnchanged(DumbSlave slave) {
+        return name.equals(slave.getNodeName())
+                && Util.tryParseNumber(numExecutors, 1).intValue() == slave.getNumExecutors()
+                && mode == slave.getMode()
+                && Util.fixNull(description).equals(Util.fixNull(slave.getNodeDescription()))
+                && Util.fixNull(remoteFS).trim().equals(Util.fixNull(slave.getRemoteFS()).trim())
+                && normalizeLabels(labelString).equals(normalizeLabels(slave.getLabelString()))
+                && ConfigurationFingerprint.same(launcher, slave.getLauncher())
+                && ConfigurationFingerprint.same(retentionStrategy, slave.getRetentionStrategy())
+                && sameProperties(nodeProperties, slave.getNodeProperties().toList());
+    }
+
+    /**
+     * Lists what building this spec would change compared to an existing slave, for previewing the change.
+     * Values are compared the same way as in {@link #isUnchanged(DumbSlave)}. Call {@link #fromVariables()} first.
+     * @param slave the slave to compare with.
+     * @return JSONArray with one JSONObject per changed setting, containing the setting and the values before
+     *         and after as text. Empty if nothing would change.
+     */
+    public JSONArray getChanges(DumbSlave slave) {
+        JSONArray changes = new JSONArray();
+        int executors = Util.tryParseNumber(numExecutors, 1).intValue();
+        if (executors != slave.getNumExecutors()) {
+            addChange(changes, "numExecutors", String.valueOf(slave.getNumExecutors()), String.valueOf(executors));
+        }
+        if (mode != slave.getMode()) {
+            addChange(changes, "mode", String.valueOf(slave.getMode()), String.valueOf(mode));
+        }
+        if (!Util.fixNull(description).equals(Util.fixNull(slave.getNodeDescription()))) {
+            addChange(changes, "description", slave.getNodeDescription(), description);
+        }
+        if (!Util.fixNull(remoteFS).trim().equals(Util.fixNull(slave.getRemoteFS()).trim())) {
+            addChange(changes, "remoteFS", slave.getRemoteFS(), remoteFS);
+        }
+        if (!normalizeLabels(labelString).equals(normalizeLabels(slave.getLabelString()))) {
+            addChange(changes, "labels", normalizeLabels(slave.getLabelString()), normalizeLabels(labelString));
+        }
+        if (!ConfigurationFingerprint.same(launcher, slave.getLauncher())) {
+            addChange(changes, "launcher", describe(slave.getLauncher()), describe(launcher));
+        }
+        if (!ConfigurationFingerprint.same(retentionStrategy, slave.getRetentionStrategy())) {
+            addChange(changes, "retentionStrategy", describe(slave.getRetentionStrategy()),
+                    describe(retentionStrategy));
+        }
+        List<NodeProperty<?>> properties = slave.getNodeProperties().toList();
+        if (!sameProperties(nodeProperties, properties)) {
+            addChange(changes, "nodeProperties", describe(properties), describe(nodeProperties));
+        }
+        return changes;
+    }
+
+    /**
+     * Adds a changed setting to a list of changes.
+     * @param changes the list of changes.
+     * @param setting the name of the setting.
+     * @param before the value before the change.
+     * @param after the value after the change.
+     */
+    private static void addChange(JSONArray changes, String setting, String before, String after) {
+        JSONObject change = new JSONObject();
+        change.put("setting", setting);
+        change.put("before", Util.fixNull(before));
+        change.put("after", Util.fixNull(after));
+        changes.add(change);
+    }
+
+    /**
+     * Describes a launcher, an availability or node properties as text for the user.
+     * @param configuration the configuration, might be null.
+     * @return the display name of the configuration, and the command for command launchers.
+     */
+    private static String describe(Object configuration) {
+        if (configuration == null) {
+            return "";
+        } else if (configuration instanceof List) {
+            StringBuilder description = new StringBuilder();
+            for (Object element : (List)configuration) {
+                if (description.length() > 0) {
+                    description.append(", ");
+                }
+                description.append(describe(element));
+            }
+            return description.toString();
+        } else if (configuration instanceof CommandLauncher) {
+            return ((CommandLauncher)configuration).getDescriptor().getDisplayName() + ": "
+                    + ((CommandLauncher)configuration).getCommand();
+        } else if (configuration instanceof Describable) {
+            return ((Describable)configuration).getDescriptor().getDisplayName();
+        }
+        return configuration.toString();
+    }
+
+    /**
+     * Removes surrounding and repeated whitespace from a label string.
+     * @param labels the labels separated by whitespace, might be null.
+     * @return the labels separated by single spaces.
+     */
+    private static String normalizeLabels(String labels) {
+        return Util.fixNull(labels).trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Checks if two lists of node properties have the same configuration, in the same order.
+     * @param properties the properties.
+     * @param otherProperties the other properties.
+     * @return true if they have.
+     */
+    private static boolean sameProperties(List<NodeProperty<?>> properties, List<NodeProperty<?>> otherProperties) {
+        if (properties.size() != otherProperties.size()) {
+            return false;
+        }
+        for (int i = 0; i < properties.size(); i++) {
+            if (!ConfigurationFingerprint.same(properties.get(i), otherProperties.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The name of the slave.
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The description.
+     * @return the description.
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Sets the description.
+     * @param description the description.
+     */
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    /**
+     * The remote FS root.
+     * @return the remote FS root.
+     */
+    public String getRemoteFS() {
+        return remoteFS;
+    }
+
+    /**
+     * Sets the remote FS root.
+     * @param remoteFS the remote FS root.
+     */
+    public void setRemoteFS(String remoteFS) {
+        this.remoteFS = remoteFS;
+    }
+
+    /**
+     * The number of executors.
+     * @return the number of executors as written by the user.
+     */
+    public String getNumExecutors() {
+        return numExecutors;
+    }
+
+    /**
+     * Sets the number of executors.
+     * @param numExecutors the number of executors as written by the user.
+     */
+    public void setNumExecutors(String numExecutors) {
+        this.numExecutors = numExecutors;
+    }
+
+    /**
+     * How the slave ties to jobs.
+     * @return the mode.
+     */
+    public Node.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Sets how the slave ties to jobs.
+     * @param mode the mode.
+     */
+    public void setMode(Node.Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * The labels.
+     * @return the labels separated by space.
+     */
+    public String getLabelString() {
+        return labelString;
+    }
+
+    /**
+     * Sets the labels.
+     * @param labelString the labels separated by space.
+     */
+    public void setLabelString(String labelString) {
+        this.labelString = labelString;
+    }
+
+    /**
+     * The launcher.
+     * @return the launcher.
+     */
+    public ComputerLauncher getLauncher() {
+        return launcher;
+    }
+
+    /**
+     * Sets the launcher.
+     * @param launcher the launcher.
+     */
+    public void setLauncher(ComputerLauncher launcher) {
+        this.launcher = launcher;
+    }
+
+    /**
+     * The availability.
+     * @return the retention strategy.
+     */
+    public RetentionStrategy getRetentionStrategy() {
+        return retentionStrategy;
+    }
+
+    /**
+     * Sets the availability.
+     * @param retentionStrategy the retention strategy.
+     */
+    public void setRetentionStrategy(RetentionStrategy retentionStrategy) {
+        this.retentionStrategy = retentionStrategy;
+    }
+
+    /**
+     * The node properties.
+     * @return the node properties.
+     */
+    public List<NodeProperty<?>> getNodeProperties() {
+        return nodeProperties;
+    }
+
+    /**
+     * Sets the node properties.
+     * @param nodeProperties the node properties.
+     */
+    public void setNodeProperties(List<NodeProperty<?>> nodeProperties) {
+        this.nodeProperties = nodeProperties;
+    }
+}
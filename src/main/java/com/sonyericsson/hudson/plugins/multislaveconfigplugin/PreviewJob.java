@@ -0,0 +1,112 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Works out in the background what applying settings would change on each node, without changing anything.
+ * The nodes are handled in parallel, see {@link NodeJob}, and the preview page gets the changes while they
+ * are being worked out, see {@link #getPreview(int)}.
+ */
+public class PreviewJob extends NodeJob {
+
+    private final HashMap settings;
+    private final List<JSONObject> changedNodes = Collections.synchronizedList(new ArrayList<JSONObject>());
+    private final AtomicInteger unchanged = new AtomicInteger();
+
+    /**
+     * Standard constructor.
+     * @param nodes the nodes to preview the settings on.
+     * @param settings the settings to preview, see {@link NodeList#interpretJSON(net.sf.json.JSONObject)}.
+     */
+    public PreviewJob(NodeList nodes, HashMap settings) {
+        super(nodes);
+        this.settings = settings;
+    }
+
+    @Override
+    protected void process(int index, Node node) {
+        if (!(node instanceof DumbSlave)) {
+            unchanged.incrementAndGet();
+            return;
+        }
+        DumbSlave slave = (DumbSlave)node;
+        JSONArray changes = nodes.newSpec(slave, settings).getChanges(slave);
+        if (changes.isEmpty()) {
+            unchanged.incrementAndGet();
+        } else {
+            JSONObject changedNode = new JSONObject();
+            changedNode.put("name", slave.getNodeName());
+            changedNode.put("changes", changes);
+            changedNodes.add(changedNode);
+        }
+    }
+
+    /**
+     * The number of nodes so far that the settings wouldn't change.
+     * @return the count.
+     */
+    public int getUnchanged() {
+        return unchanged.get();
+    }
+
+    /**
+     * The number of nodes so far that the settings would change.
+     * @return the count.
+     */
+    public int getChanged() {
+        return changedNodes.size();
+    }
+
+    /**
+     * Gets the progress of the preview together with the changed nodes found since the last call.
+     * @param offset the number of changed nodes that the preview page already has.
+     * @return JSONObject with the progress, see {@link NodeJob#getProgress()}, the number of unchanged nodes,
+     *         the offset and the changed nodes found after it, each with its name and changes.
+     */
+    public JSONObject getPreview(int offset) {
+        JSONObject preview = getProgress();
+        preview.put("unchanged", getUnchanged());
+        JSONArray newChanges = new JSONArray();
+        synchronized (changedNodes) {
+            int from = Math.max(0, Math.min(offset, changedNodes.size()));
+            newChanges.addAll(changedNodes.subList(from, changedNodes.size()));
+            preview.put("offset", from);
+        }
+        preview.put("changedNodes", newChanges);
+        return preview;
+    }
+}
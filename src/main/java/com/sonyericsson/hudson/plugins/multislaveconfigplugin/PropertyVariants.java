@@ -0,0 +1,205 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.NodePropertyDescriptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The different values that one kind of node property has among a list of slaves, and how many slaves have each.
+ * For example four different sets of environment variables, on 1200, 600, 150 and 50 slaves.
+ * Values are told apart by their {@link ConfigurationFingerprint}s.
+ */
+public final class PropertyVariants {
+
+    private final NodePropertyDescriptor descriptor;
+    private final List<Variant> variants;
+    private final int slavesWithout;
+
+    /**
+     * Standard constructor.
+     * @param descriptor the kind of node property.
+     * @param variants the different values, most common first.
+     * @param slavesWithout the number of slaves that don't have this kind of node property.
+     */
+    private PropertyVariants(NodePropertyDescriptor descriptor, List<Variant> variants, int slavesWithout) {
+        this.descriptor = descriptor;
+        this.variants = Collections.unmodifiableList(variants);
+        this.slavesWithout = slavesWithout;
+    }
+
+    /**
+     * Counts the different values of every kind of node property on the DumbSlaves among the nodes,
+     * in one pass over the nodes. Other nodes are skipped.
+     * @param nodes the nodes.
+     * @return one entry per kind of node property, in the order they were first found.
+     */
+    public static List<PropertyVariants> analyze(Iterable<? extends Node> nodes) {
+        Map<NodePropertyDescriptor, Map<String, Variant>> found =
+                new LinkedHashMap<NodePropertyDescriptor, Map<String, Variant>>();
+        int slaves = 0;
+        for (Node node : nodes) {
+            if (!(node instanceof DumbSlave)) {
+                continue;
+            }
+            slaves++;
+            for (NodeProperty<?> property : node.getNodeProperties()) {
+                if (property == null) {
+                    continue;
+                }
+                Map<String, Variant> variantsOfKind = found.get(property.getDescriptor());
+                if (variantsOfKind == null) {
+                    variantsOfKind = new LinkedHashMap<String, Variant>();
+                    found.put(property.getDescriptor(), variantsOfKind);
+                }
+                String fingerprint = ConfigurationFingerprint.of(property);
+                Variant variant = variantsOfKind.get(fingerprint);
+                if (variant == null) {
+                    variant = new Variant(fingerprint, property);
+                    variantsOfKind.put(fingerprint, variant);
+                }
+                variant.count++;
+            }
+        }
+
+        List<PropertyVariants> result = new ArrayList<PropertyVariants>(found.size());
+        for (Map.Entry<NodePropertyDescriptor, Map<String, Variant>> entry : found.entrySet()) {
+            List<Variant> variants = new ArrayList<Variant>(entry.getValue().values());
+            Collections.sort(variants, new Comparator<Variant>() {
+                @Override
+                public int compare(Variant v1, Variant v2) {
+                    return v2.count - v1.count;
+                }
+            });
+            int slavesWith = 0;
+            for (Variant variant : variants) {
+                slavesWith += variant.count;
+            }
+            result.add(new PropertyVariants(entry.getKey(), variants, slaves - slavesWith));
+        }
+        return result;
+    }
+
+    /**
+     * The kind of node property.
+     * @return the descriptor.
+     */
+    public NodePropertyDescriptor getDescriptor() {
+        return descriptor;
+    }
+
+    /**
+     * The class name of the descriptor, used to point out the kind of node property in requests.
+     * @return the class name.
+     */
+    public String getDescriptorClassName() {
+        return descriptor.getClass().getName();
+    }
+
+    /**
+     * The different values.
+     * @return the values, most common first.
+     */
+    public List<Variant> getVariants() {
+        return variants;
+    }
+
+    /**
+     * The number of slaves that don't have this kind of node property.
+     * @return the count.
+     */
+    public int getSlavesWithout() {
+        return slavesWithout;
+    }
+
+    /**
+     * The number of slaves with each value, for showing to the user.
+     * @return the counts separated by slashes, most common first, e.g. "1200 / 600 / 150 / 50".
+     */
+    public String getCounts() {
+        StringBuilder counts = new StringBuilder();
+        for (Variant variant : variants) {
+            if (counts.length() > 0) {
+                counts.append(" / ");
+            }
+            counts.append(variant.count);
+        }
+        return counts.toString();
+    }
+
+    /**
+     * One value of a kind of node property.
+     */
+    public static final class Variant {
+
+        private final String fingerprint;
+        private final NodeProperty<?> property;
+        private int count;
+
+        /**
+         * Standard constructor.
+         * @param fingerprint the fingerprint of the value.
+         * @param property the first property found with the value.
+         */
+        private Variant(String fingerprint, NodeProperty<?> property) {
+            this.fingerprint = fingerprint;
+            this.property = property;
+        }
+
+        /**
+         * The fingerprint of the value, used to point out the value in requests.
+         * @return the fingerprint.
+         */
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        /**
+         * A property with the value.
+         * @return the property.
+         */
+        public NodeProperty<?> getProperty() {
+            return property;
+        }
+
+        /**
+         * The number of slaves with the value.
+         * @return the count.
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What happened to each node when removing nodes from Jenkins, see {@link JenkinsNodes#remove}.
+ * A node is either removed, missing because it wasn't registered any more, or failed with a cause.
+ */
+public class RemovalResult {
+
+    private final List<String> removed = new ArrayList<String>();
+    private final List<String> missing = new ArrayList<String>();
+    private final Map<String, String> failures = new LinkedHashMap<String, String>();
+
+    /**
+     * Records a removed node.
+     * @param name the name of the node.
+     */
+    void addRemoved(String name) {
+        removed.add(name);
+    }
+
+    /**
+     * Records a node that wasn't registered.
+     * @param name the name of the node.
+     */
+    void addMissing(String name) {
+        missing.add(name);
+    }
+
+    /**
+     * Records a node that couldn't be removed.
+     * @param name the name of the node.
+     * @param cause why it couldn't be removed.
+     */
+    void addFailure(String name, String cause) {
+        failures.put(name, cause);
+    }
+
+    /**
+     * Records everything in another result as well.
+     * @param other the other result.
+     */
+    void addAll(RemovalResult other) {
+        removed.addAll(other.removed);
+        missing.addAll(other.missing);
+        failures.putAll(other.failures);
+    }
+
+    /**
+     * The names of the removed nodes.
+     * @return the names.
+     */
+    public List<String> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    /**
+     * The names of the nodes that weren't registered, so there was nothing to remove.
+     * @return the names.
+     */
+    public List<String> getMissing() {
+        return Collections.unmodifiableList(missing);
+    }
+
+    /**
+     * The nodes that couldn't be removed.
+     * @return map from the name of the node to the cause.
+     */
+    public Map<String, String> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * Checks if all nodes were removed or already gone.
+     * @return true if no node failed.
+     */
+    public boolean isSuccessful() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Represents this result as JSON.
+     * @return JSONObject with the removed and missing names, and the failures as objects with name and cause.
+     */
+    public JSONObject toJSON() {
+        JSONArray failed = new JSONArray();
+        for (Map.Entry<String, String> failure : failures.entrySet()) {
+            JSONObject failedNode = new JSONObject();
+            failedNode.put("name", failure.getKey());
+            failedNode.put("cause", failure.getValue());
+            failed.add(failedNode);
+        }
+        JSONObject json = new JSONObject();
+        json.put("removed", JSONArray.fromObject(removed));
+        json.put("missing", JSONArray.fromObject(missing));
+        json.put("failed", failed);
+        return json;
+    }
+}
@@ -0,0 +1,732 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import antlr.ANTLRException;
+import hudson.model.Label;
+import hudson.slaves.DumbSlave;
+import hudson.util.VariableResolver;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A search on the slave filter page, compiled once per request from the submitted search parameters.
+ * The query is a pipeline of per-field matchers that every slave is run through in a single pass,
+ * stopping at the first matcher that rejects it.
+ */
+public final class SearchQuery {
+
+    private static final Logger logger = Logger.getLogger(SearchQuery.class.getName());
+
+    /**
+     * The longest time in milliseconds that the glob and regular expression matchers of one search may take,
+     * so that a pattern with catastrophic backtracking can't keep a request thread busy over a large fleet.
+     */
+    static final long PATTERN_TIMEOUT = 2000;
+
+    private final List<Matcher> matchers;
+    private final Deadline deadline;
+
+    /**
+     * Standard constructor.
+     * @param matchers the matchers, in the order they should be evaluated.
+     * @param deadline the deadline shared by the pattern matchers.
+     */
+    private SearchQuery(List<Matcher> matchers, Deadline deadline) {
+        this.matchers = Collections.unmodifiableList(matchers);
+        this.deadline = deadline;
+    }
+
+    /**
+     * Compiles the search parameters from the slave filter page into a query.
+     * Parameters that are empty don't become matchers at all.
+     * If the labelExpression parameter is true, the labels parameter is a label expression instead of text.
+     * If the matchMode parameter is "glob" or "regex", the name, remote FS and description parameters are globs
+     * or regular expressions instead of text.
+     * @param searchParameters submitted form containing what to search for.
+     * @return the query.
+     */
+    public static SearchQuery compile(JSONObject searchParameters) {
+        List<Matcher> matchers = new ArrayList<Matcher>();
+        Deadline deadline = new Deadline();
+
+        //Cheap exact checks first, so that most slaves are rejected before any string is split.
+        try {
+            matchers.add(new ExecutorsMatcher(Integer.parseInt((String)searchParameters.get("executors"))));
+        //CS IGNORE EmptyBlock FOR NEXT 1 LINES. REASON: Don't need to catch anything.
+        } catch (NumberFormatException ignored) { }
+
+        String fullNameString = (String)searchParameters.get("fullNames");
+        if (fullNameString != null && !fullNameString.isEmpty()) {
+            matchers.add(new FullNamesMatcher(new HashSet<String>(Arrays.asList(fullNameString.split("\\s+")))));
+        }
+
+        boolean labelExpression = searchParameters.optBoolean("labelExpression");
+        String matchMode = searchParameters.optString("matchMode");
+        boolean glob = "glob".equals(matchMode);
+        boolean patterns = glob || "regex".equals(matchMode);
+        for (NodeSearchIndex.Field field : NodeSearchIndex.Field.values()) {
+            String searchString = (String)searchParameters.get(field.getParameterName());
+            if (searchString != null && !searchString.isEmpty()) {
+                if (labelExpression && field == NodeSearchIndex.Field.LABELS) {
+                    matchers.add(new LabelExpressionMatcher(searchString));
+                } else if (patterns && field != NodeSearchIndex.Field.LABELS) {
+                    matchers.add(new PatternMatcher(field, searchString, glob, deadline));
+                } else {
+                    matchers.add(new TextMatcher(field, searchString));
+                }
+            }
+        }
+        return new SearchQuery(matchers, deadline);
+    }
+
+    /**
+     * The compiled matchers of this query.
+     * @return the matchers, in evaluation order.
+     */
+    List<Matcher> getMatchers() {
+        return matchers;
+    }
+
+    /**
+     * Checks if the pattern matchers of this query gave up, in which case its results are incomplete.
+     * @return true if matching took longer than {@link #PATTERN_TIMEOUT}.
+     */
+    public boolean isTimedOut() {
+        return deadline.isExpired();
+    }
+
+    /**
+     * Runs this query against the index.
+     * The candidates from the index postings are run through the matchers in a single pass. Matchers whose
+     * candidates are exactly the slaves they accept, like label expressions, aren't run again.
+     * @param index the index to search.
+     * @return the matching slaves.
+     */
+    public NodeSet search(NodeSearchIndex index) {
+        int[] candidates = null;
+        List<Matcher> unchecked = new ArrayList<Matcher>(matchers.size());
+        for (Matcher matcher : matchers) {
+            int[] matching = matcher.getCandidates(index);
+            if (matching == null || !matcher.hasExactCandidates()) {
+                unchecked.add(matcher);
+            }
+            candidates = NodeSearchIndex.intersect(candidates, matching);
+        }
+
+        BitSet result = new BitSet(index.size());
+        if (candidates == null) {
+            for (int ordinal = 0; ordinal < index.size(); ordinal++) {
+                if (matches(unchecked, index, ordinal)) {
+                    result.set(ordinal);
+                }
+            }
+        } else {
+            for (int ordinal : candidates) {
+                if (matches(unchecked, index, ordinal)) {
+                    result.set(ordinal);
+                }
+            }
+        }
+        return new NodeSet(index, result, isTimedOut());
+    }
+
+    /**
+     * Runs this query against the result of an earlier query, instead of against all slaves.
+     * Only gives the same result as {@link #search(NodeSearchIndex)} if this query {@link #narrows} the earlier one.
+     * @param previousResult the result of the earlier query.
+     * @return the matching slaves, from the same index as the earlier result.
+     */
+    public NodeSet filter(NodeSet previousResult) {
+        NodeSearchIndex index = previousResult.getIndex();
+        BitSet result = new BitSet(index.size());
+        for (int ordinal = previousResult.nextOrdinal(0); ordinal >= 0;
+             ordinal = previousResult.nextOrdinal(ordinal + 1)) {
+            if (matches(matchers, index, ordinal)) {
+                result.set(ordinal);
+            }
+        }
+        return new NodeSet(index, result, isTimedOut());
+    }
+
+    /**
+     * Checks if every slave matching this query also matches another query.
+     * This is the case when the user keeps typing in the search fields, e.g. "lin" followed by "linux".
+     * The check is conservative, a false answer only means that the whole index has to be searched.
+     * A query that timed out is never narrowed, since its result is incomplete.
+     * @param previous the other query.
+     * @return true if the result of this query is a subset of the result of the other query.
+     */
+    public boolean narrows(SearchQuery previous) {
+        if (previous.isTimedOut()) {
+            return false;
+        }
+        for (Matcher previousMatcher : previous.matchers) {
+            boolean implied = false;
+            for (Matcher matcher : matchers) {
+                if (matcher.narrows(previousMatcher)) {
+                    implied = true;
+                    break;
+                }
+            }
+            if (!implied) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks a slave against all matchers, stopping at the first one that rejects it.
+     * @param slave the slave to check.
+     * @return true if all matchers accepted the slave.
+     */
+    public boolean matches(DumbSlave slave) {
+        for (Matcher matcher : matchers) {
+            if (!matcher.matches(slave)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks a slave in the index against some matchers, stopping at the first one that rejects it.
+     * @param checked the matchers.
+     * @param index the index.
+     * @param ordinal the position of the slave in the index.
+     * @return true if all the matchers accepted the slave.
+     */
+    private static boolean matches(List<Matcher> checked, NodeSearchIndex index, int ordinal) {
+        for (Matcher matcher : checked) {
+            if (!matcher.matches(index, ordinal)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * One step of the query pipeline.
+     */
+    abstract static class Matcher {
+
+        /**
+         * Gets the ordinals of the slaves in the index that could match, used to avoid looking at the others.
+         * @param index the index.
+         * @return sorted ordinals, or null if the index can't narrow the search for this matcher.
+         */
+        abstract int[] getCandidates(NodeSearchIndex index);
+
+        /**
+         * Checks if the slave matches.
+         * @param slave the slave.
+         * @return true if it did.
+         */
+        abstract boolean matches(DumbSlave slave);
+
+        /**
+         * Checks if the slave with an ordinal in the index matches.
+         * Matchers that can tell from the index alone override this, so that the slave itself isn't looked at.
+         * @param index the index.
+         * @param ordinal the position of the slave in the index.
+         * @return true if it did.
+         */
+        boolean matches(NodeSearchIndex index, int ordinal) {
+            return matches(index.getSlave(ordinal));
+        }
+
+        /**
+         * Checks if the candidates from {@link #getCandidates}, when not null, are exactly the slaves that this
+         * matcher accepts, so that they don't need to be checked one by one.
+         * @return true if they are.
+         */
+        boolean hasExactCandidates() {
+            return false;
+        }
+
+        /**
+         * Checks if every slave accepted by this matcher is also accepted by another matcher.
+         * @param other the other matcher.
+         * @return true if it is, false if it isn't or if it can't be told.
+         */
+        abstract boolean narrows(Matcher other);
+    }
+
+    /**
+     * Matches an exact number of executors.
+     */
+    static final class ExecutorsMatcher extends Matcher {
+        private final int numExecutors;
+
+        /**
+         * Standard constructor.
+         * @param numExecutors the number of executors to match.
+         */
+        ExecutorsMatcher(int numExecutors) {
+            this.numExecutors = numExecutors;
+        }
+
+        @Override
+        int[] getCandidates(NodeSearchIndex index) {
+            return index.getCandidatesByExecutors(numExecutors);
+        }
+
+        @Override
+        boolean hasExactCandidates() {
+            return true;
+        }
+
+        @Override
+        boolean matches(DumbSlave slave) {
+            return slave.getNumExecutors() == numExecutors;
+        }
+
+        @Override
+        boolean narrows(Matcher other) {
+            return other instanceof ExecutorsMatcher && ((ExecutorsMatcher)other).numExecutors == numExecutors;
+        }
+    }
+
+    /**
+     * Matches any of a set of full node names.
+     */
+    static final class FullNamesMatcher extends Matcher {
+        private final Set<String> names;
+
+        /**
+         * Standard constructor.
+         * @param names the full names to match.
+         */
+        FullNamesMatcher(Set<String> names) {
+            this.names = names;
+        }
+
+        @Override
+        int[] getCandidates(NodeSearchIndex index) {
+            return index.getCandidatesByNames(names);
+        }
+
+        @Override
+        boolean hasExactCandidates() {
+            return true;
+        }
+
+        @Override
+        boolean matches(DumbSlave slave) {
+            return names.contains(slave.getNodeName());
+        }
+
+        @Override
+        boolean narrows(Matcher other) {
+            return other instanceof FullNamesMatcher && ((FullNamesMatcher)other).names.containsAll(names);
+        }
+    }
+
+    /**
+     * Matches a label expression, like "linux &amp;&amp; !docker || gpu", against the labels of the slave.
+     * The name of a slave counts as one of its labels, as in Jenkins.
+     * An expression that can't be parsed matches no slaves.
+     */
+    static final class LabelExpressionMatcher extends Matcher {
+        private final String expression;
+        private final Label label;
+
+        /**
+         * Standard constructor, parses the expression once.
+         * @param expression the label expression as written by the user.
+         */
+        LabelExpressionMatcher(String expression) {
+            this.expression = expression.trim();
+            Label parsed;
+            try {
+                parsed = Label.parseExpression(this.expression);
+            } catch (ANTLRException e) {
+                parsed = null;
+            }
+            this.label = parsed;
+        }
+
+        @Override
+        int[] getCandidates(NodeSearchIndex index) {
+            if (label == null) {
+                return new int[0];
+            }
+            return index.getCandidatesByLabel(label);
+        }
+
+        /**
+         * The index evaluates the whole expression, unless it contains operators that the index doesn't know about,
+         * in which case the candidates are null.
+         * @return true.
+         */
+        @Override
+        boolean hasExactCandidates() {
+            return true;
+        }
+
+        /**
+         * Checks the label bits of the slave in the index, and only parses the labels of the slave if the index
+         * can't evaluate the expression.
+         * @param index the index.
+         * @param ordinal the position of the slave in the index.
+         * @return true if the slave matches the expression.
+         */
+        @Override
+        boolean matches(NodeSearchIndex index, int ordinal) {
+            if (label == null) {
+                return false;
+            }
+            Boolean matching = index.matchesLabel(label, ordinal);
+            if (matching == null) {
+                return matches(index.getSlave(ordinal));
+            }
+            return matching;
+        }
+
+        @Override
+        boolean matches(final DumbSlave slave) {
+            if (label == null) {
+                return false;
+            }
+            final LabelSet labels = LabelSet.parse(slave.getLabelString());
+            return label.matches(new VariableResolver<Boolean>() {
+                @Override
+                public Boolean resolve(String name) {
+                    return labels.contains(name) || name.equals(slave.getNodeName());
+                }
+            });
+        }
+
+        @Override
+        boolean narrows(Matcher other) {
+            return other instanceof LabelExpressionMatcher
+                    && ((LabelExpressionMatcher)other).expression.equals(expression);
+        }
+    }
+
+    /**
+     * Matches a glob or a regular expression against one text field, see {@link SearchSlaves#getPattern}.
+     * A pattern that isn't valid matches no slaves. Neither does any pattern once the {@link Deadline} of the query
+     * has expired.
+     */
+    static final class PatternMatcher extends Matcher {
+        private final NodeSearchIndex.Field field;
+        private final String pattern;
+        private final boolean glob;
+        private final Pattern compiled;
+        private final Deadline deadline;
+
+        /**
+         * Standard constructor, gets the compiled pattern.
+         * @param field the field to match.
+         * @param pattern the glob or regular expression as written by the user.
+         * @param glob true if the pattern is a glob.
+         * @param deadline the deadline shared with the other pattern matchers of the query.
+         */
+        PatternMatcher(NodeSearchIndex.Field field, String pattern, boolean glob, Deadline deadline) {
+            this.field = field;
+            this.pattern = pattern;
+            this.glob = glob;
+            this.deadline = deadline;
+            Pattern parsed;
+            try {
+                parsed = SearchSlaves.getPattern(pattern, glob);
+            } catch (PatternSyntaxException e) {
+                parsed = null;
+            }
+            this.compiled = parsed;
+        }
+
+        /**
+         * The parts of a glob between the wildcards have to be in the value, so the slaves that have all of them
+         * can be looked up in the index. Regular expressions are matched against all slaves.
+         * @param index the index.
+         * @return sorted ordinals, or null if the index can't narrow the search.
+         */
+        @Override
+        int[] getCandidates(NodeSearchIndex index) {
+            if (compiled == null) {
+                return new int[0];
+            }
+            if (!glob) {
+                return null;
+            }
+            int[] candidates = null;
+            for (String literal : pattern.split("[*?]")) {
+                if (literal.trim().length() > 0) {
+                    candidates = NodeSearchIndex.intersect(candidates, index.getCandidates(field, literal));
+                }
+            }
+            return candidates;
+        }
+
+        @Override
+        boolean matches(DumbSlave slave) {
+            if (compiled == null || deadline.isExpired()) {
+                return false;
+            }
+            String value = field.getValue(slave);
+            if (value == null) {
+                return false;
+            }
+            java.util.regex.Matcher matcher = compiled.matcher(new DeadlineCharSequence(value, deadline.start()));
+            try {
+                if (glob) {
+                    return matcher.matches();
+                } else {
+                    return matcher.find();
+                }
+            } catch (PatternTimeoutException e) {
+                deadline.expire();
+                logger.log(Level.WARNING, "Gave up matching the pattern {0} after {1} ms",
+                        new Object[]{pattern, PATTERN_TIMEOUT});
+                return false;
+            }
+        }
+
+        /**
+         * A pattern matcher only narrows the same pattern on the same field.
+         * @param other the other matcher.
+         * @return true if every slave accepted by this matcher is accepted by the other.
+         */
+        @Override
+        boolean narrows(Matcher other) {
+            if (!(other instanceof PatternMatcher)) {
+                return false;
+            }
+            PatternMatcher otherMatcher = (PatternMatcher)other;
+            return otherMatcher.field == field && otherMatcher.glob == glob && otherMatcher.pattern.equals(pattern);
+        }
+    }
+
+    /**
+     * The time limit of all pattern matching in one query, so that a query with several patterns still gives up
+     * after {@link #PATTERN_TIMEOUT}. The clock starts when the first pattern is matched.
+     */
+    static final class Deadline {
+        private long time;
+        private volatile boolean expired;
+
+        /**
+         * Starts the clock, unless it already has been started.
+         * @return the time in milliseconds after which matching should give up.
+         */
+        synchronized long start() {
+            if (time == 0) {
+                time = System.currentTimeMillis() + PATTERN_TIMEOUT;
+            }
+            return time;
+        }
+
+        /**
+         * Marks the deadline as passed, after which no pattern of the query matches.
+         */
+        void expire() {
+            expired = true;
+        }
+
+        /**
+         * Checks if matching has given up.
+         * @return true if the deadline has passed.
+         */
+        boolean isExpired() {
+            return expired;
+        }
+    }
+
+    /**
+     * Thrown when a pattern has been matching for too long.
+     */
+    static final class PatternTimeoutException extends RuntimeException {
+    }
+
+    /**
+     * A string that throws {@link PatternTimeoutException} when it is read after a deadline.
+     * The regular expression engine reads the value one character at a time, so backtracking stops at the
+     * deadline. The clock is only looked at every {@link #CHECK_INTERVAL} characters.
+     */
+    static final class DeadlineCharSequence implements CharSequence {
+        /**
+         * The number of characters read between looking at the clock.
+         */
+        static final int CHECK_INTERVAL = 1024;
+
+        private final String value;
+        private final long deadline;
+        private int reads;
+
+        /**
+         * Standard constructor.
+         * @param value the string.
+         * @param deadline the time in milliseconds after which reading fails.
+         */
+        DeadlineCharSequence(String value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (++reads == CHECK_INTERVAL) {
+                reads = 0;
+                if (System.currentTimeMillis() > deadline) {
+                    throw new PatternTimeoutException();
+                }
+            }
+            return value.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new DeadlineCharSequence(value.substring(start, end), deadline);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    /**
+     * Matches whitespace separated, case insensitive substrings of one text field.
+     * All the search tokens have to be part of some token in the field.
+     * Search tokens containing environment variables, like $NAME, are also matched against the field value
+     * with the environment variables switched in.
+     */
+    static final class TextMatcher extends Matcher {
+        private final NodeSearchIndex.Field field;
+        private final String searchString;
+        private final String[] tokens;
+        private final boolean hasVariables;
+
+        /**
+         * Standard constructor, splits the search string once.
+         * @param field the field to match, or null if only {@link #matches(DumbSlave, String)} is used.
+         * @param searchString the search string as written by the user.
+         */
+        TextMatcher(NodeSearchIndex.Field field, String searchString) {
+            this.field = field;
+            this.searchString = searchString;
+            this.tokens = SearchSlaves.makeSearchable(searchString).split("\\s+");
+            boolean variables = false;
+            for (String token : tokens) {
+                if (token.contains("$")) {
+                    variables = true;
+                }
+            }
+            this.hasVariables = variables;
+        }
+
+        @Override
+        int[] getCandidates(NodeSearchIndex index) {
+            return index.getCandidates(field, searchString);
+        }
+
+        @Override
+        boolean matches(DumbSlave slave) {
+            return matches(slave, field.getValue(slave));
+        }
+
+        /**
+         * A text matcher narrows another one on the same field if each of the other's tokens is part of one of
+         * this matcher's tokens. A token with environment variables can match the switched in value, so it only
+         * narrows a token that has environment variables as well.
+         * @param other the other matcher.
+         * @return true if every slave accepted by this matcher is accepted by the other.
+         */
+        @Override
+        boolean narrows(Matcher other) {
+            if (!(other instanceof TextMatcher) || ((TextMatcher)other).field != field) {
+                return false;
+            }
+            for (String otherToken : ((TextMatcher)other).tokens) {
+                boolean contained = false;
+                for (String token : tokens) {
+                    if (token.contains(otherToken) && (!token.contains("$") || otherToken.contains("$"))) {
+                        contained = true;
+                        break;
+                    }
+                }
+                if (!contained) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Checks if the value of the field on the slave matches.
+         * @param slave the slave the value is from.
+         * @param slaveParameter the value to match.
+         * @return true if all search tokens were found.
+         */
+        boolean matches(DumbSlave slave, String slaveParameter) {
+            if (slaveParameter == null || slaveParameter.isEmpty()) {
+                return false;
+            }
+            String[] slaveTokens = SearchSlaves.makeSearchable(slaveParameter).split("\\s+");
+            String[] environmentSlaveTokens = null;
+            if (hasVariables) {
+                environmentSlaveTokens = SearchSlaves.makeSearchable(
+                        EnvironmentVariables.toVariables(slave, slaveParameter)).split("\\s+");
+            }
+
+            for (String token : tokens) {
+                boolean anySlaveParameterContained = false;
+                for (int i = 0; i < slaveTokens.length; i++) {
+                    if (slaveTokens[i].contains(token)) {
+                        anySlaveParameterContained = true;
+                        break;
+                    } else if (environmentSlaveTokens != null && token.contains("$")
+                            && i < environmentSlaveTokens.length && environmentSlaveTokens[i].contains(token)) {
+                        anySlaveParameterContained = true;
+                        break;
+                    }
+                }
+                if (!anySlaveParameterContained) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import net.sf.json.JSONObject;
+
+import java.util.BitSet;
+
+/**
+ * The searches made from the slave filter page of one session.
+ * Every search carries a sequence number from the page. A search that has been superseded by a later one,
+ * either before it started or while it was running, doesn't produce a result.
+ * When a search narrows the previous one, and no slaves have changed since, only the previous result is filtered.
+ * The previous result is kept as the ordinals and the generation of its index, so that the session doesn't hold on
+ * to an index that has been replaced.
+ */
+public class SearchSession {
+
+    private long latestSequence = Long.MIN_VALUE;
+    private SearchQuery lastQuery;
+    private long lastGeneration;
+    private BitSet lastOrdinals;
+
+    /**
+     * Searches for slaves.
+     * @param sequence the sequence number of the search, higher for later searches.
+     * @param searchParameters submitted form containing what to search for.
+     * @return the matching slaves, or null if the search was superseded.
+     */
+    public NodeSet search(long sequence, JSONObject searchParameters) {
+        SearchQuery query = SearchQuery.compile(searchParameters);
+        NodeSearchIndex index = NodeSearchIndex.getIndex();
+        SearchQuery previousQuery;
+        BitSet previousOrdinals;
+        synchronized (this) {
+            if (sequence <= latestSequence) {
+                return null;
+            }
+            latestSequence = sequence;
+            previousQuery = lastQuery;
+            previousOrdinals = lastOrdinals;
+            if (lastGeneration != index.getGeneration()) {
+                previousQuery = null;
+            }
+        }
+
+        NodeSet result;
+        if (previousQuery != null && query.narrows(previousQuery)) {
+            result = query.filter(new NodeSet(index, previousOrdinals));
+        } else {
+            result = query.search(index);
+        }
+
+        synchronized (this) {
+            if (sequence != latestSequence) {
+                return null;
+            }
+            lastQuery = query;
+            lastGeneration = index.getGeneration();
+            lastOrdinals = result.toBitSet();
+        }
+        return result;
+    }
+
+    /**
+     * Checks if a search is the latest one started in this session.
+     * @param sequence the sequence number of the search.
+     * @return true if no later search has been started.
+     */
+    public synchronized boolean isLatest(long sequence) {
+        return sequence == latestSequence;
+    }
+}
@@ -25,16 +25,13 @@
 
 package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
 
-import hudson.model.Hudson;
-import hudson.model.Node;
 import hudson.slaves.DumbSlave;
 import net.sf.json.JSONObject;
 
-import java.util.HashSet;
-import java.util.Arrays;
-import java.util.Set;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Class for searching and adding dumb slaves to a list.
@@ -43,6 +40,22 @@ import java.util.Collections;
  */
 public class SearchSlaves {
 
+    /**
+     * The number of compiled patterns kept in {@link #PATTERNS}.
+     */
+    static final int PATTERN_CACHE_SIZE = 64;
+
+    /**
+     * The most recently used compiled search patterns, keyed by mode and pattern string.
+     * Searches are made for every keystroke, mostly with the same patterns as the search before.
+     */
+    private static final Map<String, Pattern> PATTERNS = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+            return size() > PATTERN_CACHE_SIZE;
+        }
+    };
+
     /**
      * Not allowing to create instances of this class.
      */
@@ -52,56 +65,12 @@ public class SearchSlaves {
 
     /**
      * Gets a list of DumbSlaves that matches the search parameters.
+     * The parameters are compiled once into a {@link SearchQuery} that is run against the {@link NodeSearchIndex}.
      * @param searchParameters submitted form containing what to search for.
-     * @return list of matching slaves
+     * @return list of matching slaves, sorted by name
      */
     public static NodeList getNodes(JSONObject searchParameters) {
-        NodeList returnList = new NodeList(Hudson.getInstance().getNodes());
-        NodeList masterList = new NodeList(Hudson.getInstance().getNodes());
-
-        //Preparing array for full name search:
-        Set<String> fullNameSearch = null;
-        String fullNameString = (String)searchParameters.get("fullNames");
-        if (fullNameString != null && !fullNameString.isEmpty()) {
-            fullNameSearch = new HashSet<String>(
-                    Arrays.asList(fullNameString.split("\\s+")));
-        }
-
-        for (Node node : masterList) {
-            if ((node instanceof DumbSlave)) {
-
-                DumbSlave slave = (DumbSlave)node;
-
-                String searchString = (String)searchParameters.get("description");
-                if (!hasSearchHit(slave, searchString, slave.getNodeDescription())) {
-                    returnList.remove(node);
-                }
-                try {
-                    int searchInt = Integer.parseInt((String)searchParameters.get("executors"));
-                    if (node.getNumExecutors() != searchInt) {
-                        returnList.remove(node);
-                    }
-                //CS IGNORE EmptyBlock FOR NEXT 1 LINES. REASON: Don't need to catch anything.
-                } catch (NumberFormatException ignored) { }
-
-                searchString = (String)searchParameters.get("remoteFS");
-                if (!hasSearchHit(slave, searchString, slave.getRemoteFS())) {
-                    returnList.remove(node);
-                }
-                searchString = (String)searchParameters.get("labels");
-                if (!hasSearchHit(slave, searchString, slave.getLabelString())) {
-                    returnList.remove(node);
-                }
-                searchString = (String)searchParameters.get("name");
-                if (!hasSearchHit(slave, searchString, slave.getNodeName())) {
-                    returnList.remove(node);
-                }
-                if (fullNameSearch != null && !fullNameSearch.contains(slave.getNodeName())) {
-                    returnList.remove(node);
-                }
-            } else { returnList.remove(node); }
-        }
-        return returnList;
+        return SearchQuery.compile(searchParameters).search(NodeSearchIndex.getIndex()).toNodeList();
     }
 
     /**
@@ -115,41 +84,71 @@ public class SearchSlaves {
         if (searchParameter == null || searchParameter.isEmpty()) {
             return true;
         }
-        if (slaveParameter.isEmpty()) {
-            return false;
-        }
-
-        searchParameter = makeSearchable(searchParameter);
-        String environmentSlaveParameter = makeSearchable(EnvironmentVariables.toVariables(slave, slaveParameter));
-        slaveParameter = makeSearchable(slaveParameter);
-
-        ArrayList<String> searchParameters = new ArrayList<String>();
-        Collections.addAll(searchParameters, searchParameter.split("\\s+"));
-
-        ArrayList<String> environmentSlaveParameters = new ArrayList<String>();
-        Collections.addAll(environmentSlaveParameters, environmentSlaveParameter.split("\\s+"));
+        return new SearchQuery.TextMatcher(null, searchParameter).matches(slave, slaveParameter);
+    }
 
-        ArrayList<String> slaveParameters = new ArrayList<String>();
-        Collections.addAll(slaveParameters, slaveParameter.split("\\s+"));
+    /**
+     * Gets a compiled search pattern, compiling it only if it isn't among the most recently used ones.
+     * A glob matches the whole value, ignoring case, where * is any number of characters and ? is one character.
+     * A regular expression is case sensitive and matches anywhere in the value, unless anchored.
+     * @param pattern the glob or regular expression as written by the user.
+     * @param glob true if the pattern is a glob, false if it is a regular expression.
+     * @return the compiled pattern.
+     * @throws PatternSyntaxException if the regular expression is not valid.
+     */
+    public static Pattern getPattern(String pattern, boolean glob) {
+        String key;
+        if (glob) {
+            key = "glob:" + pattern;
+        } else {
+            key = "regex:" + pattern;
+        }
+        synchronized (PATTERNS) {
+            Pattern compiled = PATTERNS.get(key);
+            if (compiled != null) {
+                return compiled;
+            }
+        }
+        Pattern compiled;
+        if (glob) {
+            compiled = Pattern.compile(globToRegex(pattern), Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+        } else {
+            compiled = Pattern.compile(pattern);
+        }
+        synchronized (PATTERNS) {
+            PATTERNS.put(key, compiled);
+        }
+        return compiled;
+    }
 
-        for (String currentSearchParameter : searchParameters) {
-            boolean anySlaveParameterContained = false;
-            for (int i = 0; i < slaveParameters.size(); i++) {
-                if (slaveParameters.get(i).contains(currentSearchParameter)) {
-                    anySlaveParameterContained = true;
-                    break;
-                } else if (currentSearchParameter.contains("$")) {
-                    if (environmentSlaveParameters.get(i).contains(currentSearchParameter)) {
-                        anySlaveParameterContained = true;
-                        break;
-                    }
+    /**
+     * Translates a glob into a regular expression matching the same strings.
+     * @param glob the glob, where * is any number of characters and ? is one character.
+     * @return the regular expression, with everything but the wildcards quoted.
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*' || c == '?') {
+                if (literal.length() > 0) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
                 }
+                if (c == '*') {
+                    regex.append(".*");
+                } else {
+                    regex.append('.');
+                }
+            } else {
+                literal.append(c);
             }
-            if (!anySlaveParameterContained) {
-                return false;
-            }
         }
-        return true;
+        if (literal.length() > 0) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return regex.toString();
     }
 
     /**
@@ -0,0 +1,360 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.slaves.ComputerListener;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * What the {@link NodeManageLink} remembers about one session, kept in a {@link SessionStateStore}.
+ * The active node list is kept by name, so that nodes that have since been deleted or replaced aren't held on to.
+ * Only nodes that weren't registered in Jenkins when the list was set, like slaves that are about to be created,
+ * and slaves that are being deleted are referenced directly.
+ * The looked up list is cached until the node list of Jenkins changes, then the caches of all sessions are
+ * dropped, so that no session holds on to nodes that have been deleted or replaced.
+ */
+public class SessionState {
+
+    private static final AtomicLong NODES_GENERATION = new AtomicLong();
+
+    private volatile long lastAccess;
+    private volatile NodeManageLink.UserMode userMode;
+    private volatile HashMap lastChangedSettings;
+    private volatile boolean hadLabels;
+    private volatile SlaveSelection selection;
+    private volatile ApplyJob applyJob;
+    private volatile PreviewJob previewJob;
+    private volatile DeleteJob deleteJob;
+    private final SearchSession searchSession = new SearchSession();
+    private List<String> nodeNames;
+    private Map<String, Node> detachedNodes;
+    private NodeList resolved;
+    private long resolvedGeneration;
+
+    /**
+     * Standard constructor.
+     * @param now the current time in milliseconds.
+     */
+    SessionState(long now) {
+        lastAccess = now;
+    }
+
+    /**
+     * When this state was last used.
+     * @return the time in milliseconds.
+     */
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    /**
+     * Marks this state as used.
+     * @param now the current time in milliseconds.
+     */
+    void touch(long now) {
+        lastAccess = now;
+    }
+
+    /**
+     * The wizard the session is in.
+     * @return the user mode, or null if none has been chosen.
+     */
+    public NodeManageLink.UserMode getUserMode() {
+        return userMode;
+    }
+
+    /**
+     * Sets the wizard the session is in.
+     * @param userMode the user mode.
+     */
+    public void setUserMode(NodeManageLink.UserMode userMode) {
+        this.userMode = userMode;
+    }
+
+    /**
+     * The settings that were last applied.
+     * @return the settings, or null if none have been applied.
+     */
+    public HashMap getLastChangedSettings() {
+        return lastChangedSettings;
+    }
+
+    /**
+     * Sets the settings that were last applied.
+     * @param lastChangedSettings the settings.
+     */
+    public void setLastChangedSettings(HashMap lastChangedSettings) {
+        this.lastChangedSettings = lastChangedSettings;
+    }
+
+    /**
+     * If the slaves had the labels to remove before the settings were applied.
+     * @return true if they had.
+     */
+    public boolean getHadLabels() {
+        return hadLabels;
+    }
+
+    /**
+     * Sets if the slaves had the labels to remove before the settings were applied.
+     * @param hadLabels true if they had.
+     */
+    public void setHadLabels(boolean hadLabels) {
+        this.hadLabels = hadLabels;
+    }
+
+    /**
+     * The result and selection of the last search on the slave filter page.
+     * @return the selection, or null if there hasn't been any search.
+     */
+    public SlaveSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * Sets the result and selection of the last search on the slave filter page.
+     * @param selection the selection.
+     */
+    public void setSelection(SlaveSelection selection) {
+        this.selection = selection;
+    }
+
+    /**
+     * The last started apply of settings.
+     * @return the job, or null if nothing has been applied.
+     */
+    public ApplyJob getApplyJob() {
+        return applyJob;
+    }
+
+    /**
+     * Sets the last started apply of settings.
+     * @param applyJob the job.
+     */
+    public void setApplyJob(ApplyJob applyJob) {
+        this.applyJob = applyJob;
+    }
+
+    /**
+     * The last started deletion of slaves.
+     * @return the job, or null if nothing has been deleted.
+     */
+    public DeleteJob getDeleteJob() {
+        return deleteJob;
+    }
+
+    /**
+     * Sets the last started deletion of slaves.
+     * @param deleteJob the job.
+     */
+    public void setDeleteJob(DeleteJob deleteJob) {
+        this.deleteJob = deleteJob;
+    }
+
+    /**
+     * The last started preview of settings.
+     * @return the job, or null if nothing has been previewed.
+     */
+    public PreviewJob getPreviewJob() {
+        return previewJob;
+    }
+
+    /**
+     * Sets the last started preview of settings.
+     * @param previewJob the job.
+     */
+    public void setPreviewJob(PreviewJob previewJob) {
+        this.previewJob = previewJob;
+    }
+
+    /**
+     * The searches of this session.
+     * @return the search session.
+     */
+    public SearchSession getSearchSession() {
+        return searchSession;
+    }
+
+    /**
+     * Gets the active node list, with registered nodes looked up by name.
+     * Nodes that have been deleted since the list was set are left out.
+     * The list is only looked up again when the node list of Jenkins has changed, so the same instance is
+     * returned until then, together with what it has memoized. It must not be changed by the caller.
+     * @return the active node list, or null if there is none.
+     */
+    public NodeList getNodeList() {
+        List<String> names;
+        Map<String, Node> detached;
+        NodeList cached;
+        long cachedGeneration;
+        synchronized (this) {
+            names = nodeNames;
+            detached = detachedNodes;
+            cached = resolved;
+            cachedGeneration = resolvedGeneration;
+        }
+        if (names == null) {
+            return null;
+        }
+        long generation = NODES_GENERATION.get();
+        if (cached != null && cachedGeneration == generation) {
+            return cached;
+        }
+        List<Node> nodes = Hudson.getInstance().getNodes();
+        Map<String, Node> registered = new HashMap<String, Node>(nodes.size() * 2);
+        for (Node node : nodes) {
+            registered.put(node.getNodeName(), node);
+        }
+        NodeList nodeList = new NodeList();
+        for (String name : names) {
+            Node node = detached.get(name);
+            if (node == null) {
+                node = registered.get(name);
+            }
+            if (node != null) {
+                nodeList.add(node);
+            }
+        }
+        synchronized (this) {
+            if (nodeNames == names && NODES_GENERATION.get() == generation) {
+                resolved = nodeList;
+                resolvedGeneration = generation;
+            }
+        }
+        return nodeList;
+    }
+
+    /**
+     * Drops the cached lookup of the active node list, the names and the detached nodes are kept.
+     */
+    synchronized void clearResolved() {
+        resolved = null;
+    }
+
+    /**
+     * Marks all cached lookups of active node lists, in all sessions, as out of date.
+     * Called when the node list of Jenkins has changed.
+     */
+    static void nodesChanged() {
+        NODES_GENERATION.incrementAndGet();
+    }
+
+    /**
+     * Sets the active node list.
+     * Nodes are kept by name, except for nodes with names that aren't registered in Jenkins, like slaves that are
+     * about to be created. An out of date instance of a registered node is not kept, the registered one is used.
+     * @param nodeList the node list, or null to clear it.
+     */
+    public void setNodeList(NodeList nodeList) {
+        setNodeList(nodeList, false);
+    }
+
+    /**
+     * Sets the active node list and keeps every node in it, registered or not.
+     * Used for nodes that are about to be removed from Jenkins, but should still be listed.
+     * @param nodeList the node list.
+     */
+    public void setDetachedNodeList(NodeList nodeList) {
+        setNodeList(nodeList, true);
+    }
+
+    /**
+     * Sets the active node list.
+     * @param nodeList the node list, or null to clear it.
+     * @param detachAll true to keep all nodes, false to only keep the nodes that aren't registered.
+     */
+    private void setNodeList(NodeList nodeList, boolean detachAll) {
+        if (nodeList == null) {
+            synchronized (this) {
+                nodeNames = null;
+                detachedNodes = null;
+                resolved = null;
+            }
+            return;
+        }
+        Set<String> registered = new HashSet<String>();
+        if (!detachAll) {
+            for (Node node : Hudson.getInstance().getNodes()) {
+                registered.add(node.getNodeName());
+            }
+        }
+        List<String> names = new ArrayList<String>(nodeList.size());
+        Map<String, Node> detached = new HashMap<String, Node>();
+        for (Node node : nodeList) {
+            String name = node.getNodeName();
+            names.add(name);
+            if (!registered.contains(name)) {
+                detached.put(name, node);
+            }
+        }
+        synchronized (this) {
+            nodeNames = names;
+            detachedNodes = detached;
+            resolved = null;
+        }
+    }
+
+    /**
+     * Checks if any node in the active node list has been deleted since the list was set.
+     * @return true if some node can't be found anymore.
+     */
+    public boolean hasMissingNodes() {
+        List<String> names;
+        synchronized (this) {
+            names = nodeNames;
+        }
+        if (names == null) {
+            return false;
+        }
+        NodeList nodeList = getNodeList();
+        return nodeList == null || nodeList.size() != names.size();
+    }
+
+    /**
+     * Drops the cached lookups of the active node lists of all sessions when nodes are added, removed or
+     * reconfigured, see {@link #getNodeList()}.
+     */
+    @Extension
+    public static class InvalidationListener extends ComputerListener {
+        @Override
+        public void onConfigurationChange() {
+            nodesChanged();
+            NodeManageLink link = NodeManageLink.getInstance();
+            if (link != null) {
+                link.getSessionStates().clearResolved();
+            }
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Hudson;
+
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thread safe store of {@link SessionState}s keyed by HTTP session id.
+ * A state is removed when its HTTP session is invalidated, when it hasn't been used for a while,
+ * and, least recently used first, when there are more states than allowed.
+ */
+public class SessionStateStore {
+
+    /**
+     * How long a state is kept after it was last used, in milliseconds.
+     */
+    public static final long DEFAULT_TIME_TO_LIVE = TimeUnit.HOURS.toMillis(2);
+
+    /**
+     * How many states are kept at most.
+     */
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private static final String SESSION_ATTRIBUTE = SessionStateStore.class.getName();
+    private static final Logger logger = Logger.getLogger(SessionStateStore.class.getName());
+
+    private final ConcurrentMap<String, SessionState> states = new ConcurrentHashMap<String, SessionState>();
+    private final long timeToLive;
+    private final int maxSize;
+
+    /**
+     * Creates a store with the default time to live and size.
+     */
+    public SessionStateStore() {
+        this(DEFAULT_TIME_TO_LIVE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Standard constructor.
+     * @param timeToLive how long a state is kept after it was last used, in milliseconds.
+     * @param maxSize how many states are kept at most.
+     */
+    public SessionStateStore(long timeToLive, int maxSize) {
+        this.timeToLive = timeToLive;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the state of a session.
+     * @param sessionId the session id.
+     * @return the state, or null if the session doesn't have any.
+     */
+    public SessionState get(String sessionId) {
+        SessionState state = states.get(sessionId);
+        if (state == null) {
+            return null;
+        }
+        long now = currentTime();
+        if (isExpired(state, now)) {
+            states.remove(sessionId, state);
+            return null;
+        }
+        state.touch(now);
+        return state;
+    }
+
+    /**
+     * Gets the state of a session, creating it if it doesn't exist.
+     * Creating a state is also when expired and least recently used states are evicted.
+     * @param sessionId the session id.
+     * @return the state.
+     */
+    public SessionState getOrCreate(String sessionId) {
+        SessionState state = get(sessionId);
+        if (state != null) {
+            return state;
+        }
+        SessionState created = new SessionState(currentTime());
+        state = states.putIfAbsent(sessionId, created);
+        if (state == null) {
+            evict(sessionId);
+            return created;
+        }
+        return state;
+    }
+
+    /**
+     * Gets the state of an HTTP session, creating it if it doesn't exist.
+     * The state is removed from this store when the HTTP session is invalidated.
+     * @param session the HTTP session.
+     * @return the state.
+     */
+    public SessionState getOrCreate(HttpSession session) {
+        SessionState state = getOrCreate(session.getId());
+        if (session.getAttribute(SESSION_ATTRIBUTE) == null) {
+            session.setAttribute(SESSION_ATTRIBUTE, new Invalidation(session.getId()));
+        }
+        return state;
+    }
+
+    /**
+     * Removes the state of a session.
+     * @param sessionId the session id.
+     */
+    public void remove(String sessionId) {
+        states.remove(sessionId);
+    }
+
+    /**
+     * The number of sessions that have state, exposed as a metric of how much is retained.
+     * @return the number of states.
+     */
+    public int size() {
+        return states.size();
+    }
+
+    /**
+     * The ids of the sessions that have state.
+     * @return the session ids.
+     */
+    public Set<String> getSessionIds() {
+        return Collections.unmodifiableSet(states.keySet());
+    }
+
+    /**
+     * Drops the cached lookups of the active node lists of all states, see {@link SessionState#getNodeList()}.
+     */
+    public void clearResolved() {
+        for (SessionState state : states.values()) {
+            state.clearResolved();
+        }
+    }
+
+    /**
+     * Removes expired states, and the least recently used ones if there are still too many.
+     * @param keep the id of a session whose state should not be evicted.
+     */
+    void evict(String keep) {
+        long now = currentTime();
+        for (Map.Entry<String, SessionState> entry : states.entrySet()) {
+            if (isExpired(entry.getValue(), now)) {
+                states.remove(entry.getKey(), entry.getValue());
+            }
+        }
+        if (states.size() <= maxSize) {
+            return;
+        }
+        List<Map.Entry<String, SessionState>> entries =
+                new ArrayList<Map.Entry<String, SessionState>>(states.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, SessionState>>() {
+            @Override
+            public int compare(Map.Entry<String, SessionState> o1, Map.Entry<String, SessionState> o2) {
+                long a = o1.getValue().getLastAccess();
+                long b = o2.getValue().getLastAccess();
+                if (a < b) {
+                    return -1;
+                } else if (a > b) {
+                    return 1;
+                }
+                return 0;
+            }
+        });
+        int excess = states.size() - maxSize;
+        for (Map.Entry<String, SessionState> entry : entries) {
+            if (excess <= 0) {
+                break;
+            }
+            if (!entry.getKey().equals(keep) && states.remove(entry.getKey(), entry.getValue())) {
+                excess--;
+            }
+        }
+        logger.log(Level.FINE, "Evicted least recently used session states, {0} left", states.size());
+    }
+
+    /**
+     * Checks if a state hasn't been used for too long.
+     * @param state the state.
+     * @param now the current time in milliseconds.
+     * @return true if it has expired.
+     */
+    private boolean isExpired(SessionState state, long now) {
+        return now - state.getLastAccess() > timeToLive;
+    }
+
+    /**
+     * The current time, overridable for tests.
+     * @return the time in milliseconds.
+     */
+    long currentTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Removes the state of a session from the {@link NodeManageLink} store when the session is invalidated.
+     * Looks the store up when needed, so that it can be serialized with the session.
+     */
+    private static final class Invalidation implements HttpSessionBindingListener, Serializable {
+        private static final long serialVersionUID = 1L;
+        private final String sessionId;
+
+        /**
+         * Standard constructor.
+         * @param sessionId the id of the session.
+         */
+        private Invalidation(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
+            //Nothing to do
+        }
+
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            if (Hudson.getInstance() == null) {
+                return;
+            }
+            NodeManageLink link = NodeManageLink.getInstance();
+            if (link != null) {
+                link.getSessionStates().remove(sessionId);
+            }
+        }
+    }
+}
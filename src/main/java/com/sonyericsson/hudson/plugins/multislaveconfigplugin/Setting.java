@@ -101,6 +101,16 @@ public enum Setting {
         String getSettingString(Slave slave) {
             return ((CommandLauncher)slave.getLauncher()).getCommand();
         }
+
+        /**
+         * Only used on slaves with a CommandLauncher.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getLauncher() instanceof CommandLauncher;
+        }
     },
     /**
      * Password string, used within ManagedWindowsServiceLauncher.
@@ -114,6 +124,16 @@ public enum Setting {
         String getSettingString(Slave slave) {
             return ((ManagedWindowsServiceLauncher)slave.getLauncher()).password.getPlainText();
         }
+
+        /**
+         * Only used on slaves with a ManagedWindowsServiceLauncher.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getLauncher() instanceof ManagedWindowsServiceLauncher;
+        }
     },
     /**
      * Username, used within ManagedWindowsServiceLauncher.
@@ -127,6 +147,16 @@ public enum Setting {
         String getSettingString(Slave slave) {
             return ((ManagedWindowsServiceLauncher)slave.getLauncher()).userName;
         }
+
+        /**
+         * Only used on slaves with a ManagedWindowsServiceLauncher.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getLauncher() instanceof ManagedWindowsServiceLauncher;
+        }
     },
     /**
      * Tunnel, used within JNLPLauncher.
@@ -140,6 +170,16 @@ public enum Setting {
         String getSettingString(Slave slave) {
             return Util.fixNull(((JNLPLauncher)slave.getLauncher()).tunnel);
         }
+
+        /**
+         * Only used on slaves with a JNLPLauncher.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getLauncher() instanceof JNLPLauncher;
+        }
     },
     /**
      * Vm args, used within JNLPLauncher.
@@ -153,6 +193,16 @@ public enum Setting {
         String getSettingString(Slave slave) {
             return Util.fixNull(((JNLPLauncher)slave.getLauncher()).vmargs);
         }
+
+        /**
+         * Only used on slaves with a JNLPLauncher.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getLauncher() instanceof JNLPLauncher;
+        }
     },
     /**
      * Idle delay, used withing RetentionStrategy.Demand.
@@ -166,6 +216,16 @@ public enum Setting {
         String getSettingString(Slave slave) {
             return String.valueOf(((RetentionStrategy.Demand)slave.getRetentionStrategy()).getIdleDelay());
         }
+
+        /**
+         * Only used on slaves with a RetentionStrategy.Demand.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getRetentionStrategy() instanceof RetentionStrategy.Demand;
+        }
     },
     /**
      * In demand delay setting, used within RetentionStrategy.Demand.
@@ -179,6 +239,16 @@ public enum Setting {
         String getSettingString(Slave slave) {
             return String.valueOf(((RetentionStrategy.Demand)slave.getRetentionStrategy()).getInDemandDelay());
         }
+
+        /**
+         * Only used on slaves with a RetentionStrategy.Demand.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getRetentionStrategy() instanceof RetentionStrategy.Demand;
+        }
     },
     /**
      * Keep up when active setting, used within SimpleScheduledRetentionStrategy.
@@ -193,6 +263,16 @@ public enum Setting {
             return String.valueOf(((SimpleScheduledRetentionStrategy)slave.getRetentionStrategy()).
                     isKeepUpWhenActive());
         }
+
+        /**
+         * Only used on slaves with a SimpleScheduledRetentionStrategy.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getRetentionStrategy() instanceof SimpleScheduledRetentionStrategy;
+        }
     },
     /**
      * Start time specification, used within SimpleScheduledRetentionStrategy.
@@ -207,6 +287,16 @@ public enum Setting {
             return ((SimpleScheduledRetentionStrategy)slave.getRetentionStrategy()).getStartTimeSpec();
         }
 
+        /**
+         * Only used on slaves with a SimpleScheduledRetentionStrategy.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getRetentionStrategy() instanceof SimpleScheduledRetentionStrategy;
+        }
+
     },
     /**
      * Uptime mins, used within SimpleScheduledRetentionStrategy.
@@ -220,6 +310,16 @@ public enum Setting {
         String getSettingString(Slave slave) {
             return String.valueOf(((SimpleScheduledRetentionStrategy)slave.getRetentionStrategy()).getUpTimeMins());
         }
+
+        /**
+         * Only used on slaves with a SimpleScheduledRetentionStrategy.
+         * @param slave which slave to check
+         * @return true if the slave has one
+         */
+        @Override
+        boolean appliesTo(Slave slave) {
+            return slave.getRetentionStrategy() instanceof SimpleScheduledRetentionStrategy;
+        }
     };
 
     /**
@@ -228,4 +328,14 @@ public enum Setting {
      * @return the setting string
      */
     abstract String getSettingString(Slave slave);
+
+    /**
+     * Checks if the setting is used on a specific slave, for example the launch command is only used
+     * on slaves launched by a command.
+     * @param slave which slave to check
+     * @return true if the setting can be read from the slave
+     */
+    boolean appliesTo(Slave slave) {
+        return true;
+    }
 }
@@ -0,0 +1,203 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * The result of a search on the slave filter page together with which of the matching slaves are selected.
+ * The slave filter page only gets one page of the result at a time, the selection is kept here so that
+ * "check all" and "proceed" work on every match and not only on the listed ones.
+ * Both the result and the selection are bit sets over the ordinals of the {@link NodeSearchIndex}, so selecting
+ * all, selecting none and inverting the selection don't depend on the names of the slaves.
+ * A selection is kept in the session, so it doesn't hold on to the index or to any slaves. It only keeps the
+ * generation and the names of the index it was made from, and gets the slaves from the current index when
+ * they are needed. If the slaves have changed since the search, the ones that are left are found by name.
+ */
+public class SlaveSelection {
+
+    private final long generation;
+    private final String[] names;
+    private final BitSet matching;
+    private final boolean timedOut;
+    private final BitSet selected;
+
+    /**
+     * Standard constructor, all slaves in the result start out as selected.
+     * @param result the search result.
+     */
+    public SlaveSelection(NodeSet result) {
+        this.generation = result.getIndex().getGeneration();
+        this.names = result.getIndex().getNames();
+        this.matching = result.toBitSet();
+        this.timedOut = result.isTimedOut();
+        this.selected = result.toBitSet();
+    }
+
+    /**
+     * Checks if the search gave up before looking at all slaves, see {@link SearchQuery#isTimedOut()}.
+     * @return true if slaves that match the search may be missing.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * The number of matching slaves.
+     * @return the total count.
+     */
+    public int size() {
+        return matching.cardinality();
+    }
+
+    /**
+     * Gets the ordinal that a slave had in the index that the search was made in.
+     * @param name the name of the slave.
+     * @return the ordinal, or -1 if the slave wasn't in the index.
+     */
+    private int getOrdinal(String name) {
+        if (name == null) {
+            return -1;
+        }
+        return Math.max(-1, Arrays.binarySearch(names, name));
+    }
+
+    /**
+     * Checks if a slave is selected.
+     * @param name the name of the slave.
+     * @return true if it is selected.
+     */
+    public synchronized boolean isSelected(String name) {
+        int ordinal = getOrdinal(name);
+        return ordinal >= 0 && selected.get(ordinal);
+    }
+
+    /**
+     * Selects or deselects one slave. Slaves that aren't part of the result are ignored.
+     * @param name the name of the slave.
+     * @param select true to select it.
+     */
+    public synchronized void setSelected(String name, boolean select) {
+        int ordinal = getOrdinal(name);
+        if (ordinal >= 0 && matching.get(ordinal)) {
+            selected.set(ordinal, select);
+        }
+    }
+
+    /**
+     * Selects or deselects all matching slaves.
+     * @param select true to select all.
+     */
+    public synchronized void setAllSelected(boolean select) {
+        selected.clear();
+        if (select) {
+            selected.or(matching);
+        }
+    }
+
+    /**
+     * Selects the matching slaves that aren't selected, and deselects the ones that are.
+     */
+    public synchronized void invertSelection() {
+        selected.xor(matching);
+    }
+
+    /**
+     * Takes the state of the checkboxes on the listed page into account, they win over what is stored.
+     * @param listed the names of the slaves that were listed.
+     * @param checked the names of the listed slaves that were checked.
+     */
+    public synchronized void update(Collection<String> listed, Collection<String> checked) {
+        for (String name : listed) {
+            setSelected(name, checked.contains(name));
+        }
+    }
+
+    /**
+     * The number of selected slaves.
+     * @return the count.
+     */
+    public synchronized int getSelectedCount() {
+        return selected.cardinality();
+    }
+
+    /**
+     * Gets the selected slaves.
+     * @return the selected slaves that still exist, in name order.
+     */
+    public synchronized NodeList getSelectedNodes() {
+        return resolve(selected).toNodeList();
+    }
+
+    /**
+     * Gets one page of the result as JSON for the slave filter page.
+     * @param offset the index of the first slave on the page.
+     * @param limit the maximum number of slaves on the page.
+     * @return JSONObject with the total count, selected count, the offset, the slaves on the page and if the
+     *         search timed out.
+     */
+    public synchronized JSONObject getPage(int offset, int limit) {
+        NodeSet result = resolve(matching);
+        int total = result.size();
+        int from = Math.max(0, Math.min(offset, total));
+        JSONArray slaves = result.toNodeList(from, Math.max(0, limit)).toJSONArray();
+        for (Object slave : slaves) {
+            JSONObject slaveRepresentation = (JSONObject)slave;
+            slaveRepresentation.put("selected", isSelected(slaveRepresentation.getString("name")));
+        }
+        JSONObject page = new JSONObject();
+        page.put("total", total);
+        page.put("selected", getSelectedCount());
+        page.put("offset", from);
+        page.put("slaves", slaves);
+        page.put("timedOut", timedOut);
+        return page;
+    }
+
+    /**
+     * Finds slaves of the search result in the current index.
+     * @param ordinals the ordinals of the slaves in the index that the search was made in.
+     * @return the slaves that are still registered.
+     */
+    private NodeSet resolve(BitSet ordinals) {
+        NodeSearchIndex index = NodeSearchIndex.getIndex();
+        if (index.getGeneration() == generation) {
+            return new NodeSet(index, (BitSet)ordinals.clone());
+        }
+        BitSet current = new BitSet(index.size());
+        for (int ordinal = ordinals.nextSetBit(0); ordinal >= 0; ordinal = ordinals.nextSetBit(ordinal + 1)) {
+            int currentOrdinal = index.getOrdinal(names[ordinal]);
+            if (currentOrdinal >= 0) {
+                current.set(currentOrdinal);
+            }
+        }
+        return new NodeSet(index, current);
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Descriptor;
+import hudson.model.Failure;
+import hudson.model.Node;
+import hudson.os.windows.ManagedWindowsServiceLauncher;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.RetentionStrategy;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * How new slaves are created on the create slaves page, either blank or as copies of an existing slave.
+ * Creating a slave object is cheap, so all of them are created on the request thread, the slaves aren't
+ * registered in Jenkins until the settings are applied. The names are expected to be validated already, see
+ * {@link NodeManageLink#getSlaveNames(String, String, String, String)}.
+ */
+public abstract class SlaveTemplate {
+
+    private static final Logger logger = Logger.getLogger(SlaveTemplate.class.getName());
+
+    /**
+     * Creates one slave.
+     * @param name the name of the slave.
+     * @return the slave.
+     * @throws Failure if the slave couldn't be created.
+     */
+    protected abstract Node create(String name);
+
+    /**
+     * A template for blank slaves with the default settings of the create slaves page.
+     * @return the template.
+     */
+    public static SlaveTemplate newSlave() {
+        return new SlaveTemplate() {
+            @Override
+            protected Node create(String name) {
+                try {
+                    return new DumbSlave(name, "", "", "", Node.Mode.NORMAL, "",
+                            new ManagedWindowsServiceLauncher("", ""), new RetentionStrategy.Always(),
+                            Collections.EMPTY_LIST);
+                } catch (Descriptor.FormException e) {
+                    logger.log(Level.WARNING, "Failed to create slave " + name + " cause: " + e.getMessage());
+                    throw new Failure(Messages.FailedToEditSlave(name));
+                } catch (IOException e) {
+                    logger.log(Level.WARNING, "Failed to create slave " + name + " cause: " + e.getMessage());
+                    throw new Failure(Messages.FailedToEditSlave(name));
+                }
+            }
+        };
+    }
+
+    /**
+     * A template for copies of an existing slave, see {@link NodeSpec#copyOf(String, DumbSlave)}.
+     * Environment variables, like $NAME, in the copied settings are switched to the values of each new slave.
+     * @param source the slave to copy, with its settings already switched to environment variables if wanted.
+     * @return the template.
+     */
+    public static SlaveTemplate copyOf(final DumbSlave source) {
+        return new SlaveTemplate() {
+            @Override
+            protected Node create(String name) {
+                return NodeSpec.copyOf(name, source).fromVariables().build();
+            }
+        };
+    }
+
+    /**
+     * Creates a slave for every name. A slave that can't be created doesn't stop the others.
+     * @param names the names of the slaves.
+     * @return the created slaves, in the order of the names, and the names that failed with the causes.
+     */
+    public CreationResult createAll(Iterable<String> names) {
+        CreationResult result = new CreationResult();
+        for (String name : names) {
+            try {
+                result.addCreated(create(name));
+            //CS IGNORE IllegalCatch FOR NEXT 1 LINES. REASON: Failures are reported per slave.
+            } catch (RuntimeException e) {
+                result.addFailure(name, e.getMessage());
+            }
+        }
+        return result;
+    }
+}
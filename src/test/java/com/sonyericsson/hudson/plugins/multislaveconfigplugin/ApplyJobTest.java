@@ -0,0 +1,217 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Failure;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link ApplyJob} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ Hudson.class })
+public class ApplyJobTest {
+
+    private static final long TIMEOUT = 10000;
+    private static final int NBR_OF_NODES = ApplyJob.BATCH_SIZE * 2 + 1;
+    private Hudson hudsonMock;
+    private List<Node> registered;
+
+    /**
+     * Registers a few batches of mocked nodes.
+     */
+    @Before
+    public void setup() {
+        registered = new ArrayList<Node>();
+        for (int i = 0; i < NBR_OF_NODES; i++) {
+            Node node = Mockito.mock(Node.class);
+            when(node.getNodeName()).thenReturn("slave" + i);
+            registered.add(node);
+        }
+        hudsonMock = mock(Hudson.class);
+        mockStatic(Hudson.class);
+        when(Hudson.getInstance()).thenReturn(hudsonMock);
+        when(hudsonMock.getNodes()).thenReturn(registered);
+    }
+
+    /**
+     * Tests {@link ApplyJob#start()}.
+     * All batches are applied and the node list of Jenkins is saved once, with only the changed nodes replaced.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testApply() throws Exception {
+        NodeList nodeList = new NodeList(registered) {
+            @Override
+            protected Node changeSettings(Node node, Map settings) {
+                if (node == registered.get(0)) {
+                    return node;
+                }
+                Node changedNode = Mockito.mock(Node.class);
+                when(changedNode.getNodeName()).thenReturn(node.getNodeName());
+                return changedNode;
+            }
+        };
+        SessionState state = new SessionState(0);
+        HashMap settings = new HashMap();
+        ApplyJob job = new ApplyJob(nodeList, settings, state);
+        job.start();
+        assertTrue(job.waitFor(TIMEOUT));
+
+        assertEquals(NBR_OF_NODES, job.getDone());
+        assertEquals(NBR_OF_NODES - 1, job.getChanged());
+        assertEquals(1, job.getUnchanged());
+        assertEquals(0, job.getFailed());
+        assertTrue(job.getFailures().isEmpty());
+        assertEquals(NBR_OF_NODES, job.getResult().size());
+        assertSame(registered.get(0), job.getResult().get(0));
+        assertSame(settings, state.getLastChangedSettings());
+        assertEquals(NBR_OF_NODES, state.getNodeList().size());
+        verify(hudsonMock, times(1)).setNodes(anyList());
+    }
+
+    /**
+     * Tests {@link ApplyJob#start()}.
+     * When the settings don't change any node, the node list of Jenkins isn't saved at all.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testApplyUnchanged() throws Exception {
+        ApplyJob job = new ApplyJob(new NodeList(registered), new HashMap(), null);
+        job.start();
+        assertTrue(job.waitFor(TIMEOUT));
+
+        assertEquals(0, job.getChanged());
+        assertEquals(NBR_OF_NODES, job.getUnchanged());
+        assertEquals(NBR_OF_NODES, job.getResult().size());
+        assertSame(registered.get(NBR_OF_NODES - 1), job.getResult().get(NBR_OF_NODES - 1));
+        verify(hudsonMock, never()).setNodes(anyList());
+    }
+
+    /**
+     * Tests {@link ApplyJob#start()}.
+     * A node that fails is reported and left out, the others are still applied.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testApplyFailure() throws Exception {
+        final Node broken = registered.get(1);
+        NodeList nodeList = new NodeList(registered) {
+            @Override
+            protected Node changeSettings(Node node, Map settings) {
+                if (node == broken) {
+                    throw new Failure("broken");
+                }
+                return super.changeSettings(node, settings);
+            }
+        };
+        ApplyJob job = new ApplyJob(nodeList, new HashMap(), null);
+        job.start();
+        assertTrue(job.waitFor(TIMEOUT));
+
+        assertEquals(NBR_OF_NODES, job.getDone());
+        assertEquals(1, job.getFailures().size());
+        assertEquals("slave1: broken", job.getFailures().get(0));
+        assertEquals(1, job.getFailed());
+        assertEquals(NBR_OF_NODES - 1, job.getResult().size());
+        assertTrue(job.getProgress().getBoolean("finished"));
+    }
+
+    /**
+     * Tests {@link ApplyJob#start()}.
+     * A node that has been deleted since it was selected is reported and isn't added back.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testApplyDeleted() throws Exception {
+        NodeList nodeList = new NodeList(registered);
+        Node deleted = Mockito.mock(Node.class);
+        when(deleted.getNodeName()).thenReturn("deleted");
+        nodeList.add(deleted);
+        ApplyJob job = new ApplyJob(nodeList, new HashMap(), null);
+        job.start();
+        assertTrue(job.waitFor(TIMEOUT));
+
+        assertEquals(0, job.getChanged());
+        assertEquals(1, job.getFailed());
+        assertEquals(Messages.SlaveNoLongerExists("deleted"), job.getFailures().get(0));
+        assertEquals(NBR_OF_NODES, job.getResult().size());
+        assertFalse(job.getResult().contains(deleted));
+        verify(hudsonMock, never()).setNodes(anyList());
+    }
+
+    /**
+     * Tests {@link ApplyJob#start()} with new nodes.
+     * New nodes are added with one save of the node list, and a node whose name has been taken in the meantime
+     * is reported instead of replacing the registered one.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testApplyCreate() throws Exception {
+        NodeList nodeList = new NodeList();
+        for (int i = 0; i < NBR_OF_NODES; i++) {
+            Node node = Mockito.mock(Node.class);
+            when(node.getNodeName()).thenReturn("new" + i);
+            nodeList.add(node);
+        }
+        Node taken = Mockito.mock(Node.class);
+        when(taken.getNodeName()).thenReturn("slave0");
+        nodeList.add(taken);
+        ApplyJob job = new ApplyJob(nodeList, new HashMap(), null, true);
+        job.start();
+        assertTrue(job.waitFor(TIMEOUT));
+
+        assertEquals(NBR_OF_NODES, job.getChanged());
+        assertEquals(1, job.getFailed());
+        assertEquals(Messages.SlaveAlreadyExist("slave0"), job.getFailures().get(0));
+        assertEquals(NBR_OF_NODES, job.getResult().size());
+        assertSame(nodeList.get(0), job.getResult().get(0));
+        verify(hudsonMock, times(1)).setNodes(anyList());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.CommandLauncher;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.JNLPLauncher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link CommonSettingsAnalyzer} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class, JNLPLauncher.class })
+public class CommonSettingsAnalyzerTest {
+
+    /**
+     * Tests {@link CommonSettingsAnalyzer#analyze(Iterable)}.
+     * Settings are common if they are exactly the same, or the same with environment variables.
+     * Nodes that aren't DumbSlaves are skipped.
+     */
+    @Test
+    public void testAnalyze() {
+        List<Node> nodes = new ArrayList<Node>();
+        DumbSlave slave1 = mockSlave("slave1", "/home/slave1", "linux");
+        DumbSlave slave2 = mockSlave("slave2", "/home/slave2", "windows");
+        nodes.add(slave1);
+        nodes.add(Mockito.mock(Node.class));
+        nodes.add(slave2);
+
+        CommonSettingsAnalyzer.Summary summary = CommonSettingsAnalyzer.analyze(nodes);
+        assertTrue(summary.hasSlaves());
+        assertEquals("/home/$NAME", summary.get(Setting.REMOTE_FS));
+        assertEquals("2", summary.get(Setting.NUM_EXECUTORS));
+        assertFalse(summary.isCommon(Setting.LABELS));
+        assertNull(summary.get(Setting.LABELS));
+        verify(slave1, times(1)).getLabelString();
+        verify(slave2, times(1)).getLabelString();
+    }
+
+    /**
+     * Tests {@link CommonSettingsAnalyzer#analyze(Iterable)}.
+     * Settings of a launcher are only common if all slaves have that kind of launcher.
+     */
+    @Test
+    public void testAnalyzeLauncherSettings() {
+        List<Node> nodes = new ArrayList<Node>();
+        DumbSlave slave1 = mockSlave("slave1", "", "");
+        when(slave1.getLauncher()).thenReturn(new CommandLauncher("ssh"));
+        DumbSlave slave2 = mockSlave("slave2", "", "");
+        when(slave2.getLauncher()).thenReturn(new CommandLauncher("ssh"));
+        nodes.add(slave1);
+        nodes.add(slave2);
+        assertEquals("ssh", CommonSettingsAnalyzer.analyze(nodes).get(Setting.LAUNCH_COMMAND));
+        assertFalse(CommonSettingsAnalyzer.analyze(nodes).isCommon(Setting.TUNNEL));
+
+        when(slave2.getLauncher()).thenReturn(mock(JNLPLauncher.class));
+        assertFalse(CommonSettingsAnalyzer.analyze(nodes).isCommon(Setting.LAUNCH_COMMAND));
+    }
+
+    /**
+     * Tests {@link CommonSettingsAnalyzer#analyze(Iterable)}.
+     * Without DumbSlaves there are no common settings.
+     */
+    @Test
+    public void testAnalyzeNoSlaves() {
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(Mockito.mock(Node.class));
+        CommonSettingsAnalyzer.Summary summary = CommonSettingsAnalyzer.analyze(nodes);
+        assertFalse(summary.hasSlaves());
+        assertFalse(summary.isCommon(Setting.DESCRIPTION));
+    }
+
+    /**
+     * Creates a mocked DumbSlave.
+     * @param name the name.
+     * @param remoteFS the remote FS root.
+     * @param labels the labels.
+     * @return the mock.
+     */
+    private DumbSlave mockSlave(String name, String remoteFS, String labels) {
+        DumbSlave slave = mock(DumbSlave.class);
+        when(slave.getNodeName()).thenReturn(name);
+        when(slave.getRemoteFS()).thenReturn(remoteFS);
+        when(slave.getLabelString()).thenReturn(labels);
+        when(slave.getNumExecutors()).thenReturn(2);
+        return slave;
+    }
+}
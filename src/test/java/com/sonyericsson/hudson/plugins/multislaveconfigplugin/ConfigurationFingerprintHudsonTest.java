@@ -0,0 +1,72 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.slaves.CommandLauncher;
+import hudson.slaves.EnvironmentVariablesNodeProperty;
+import jenkins.model.Jenkins;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+/**
+ * Tests {@link ConfigurationFingerprint} using HudsonTestCases.
+ */
+public class ConfigurationFingerprintHudsonTest extends HudsonTestCase {
+
+    /**
+     * Tests {@link ConfigurationFingerprint#same(Object, Object)}.
+     * Objects are the same if their XML is.
+     */
+    public void testSame() {
+        EnvironmentVariablesNodeProperty property = createProperty("value");
+        assertTrue(ConfigurationFingerprint.same(property, createProperty("value")));
+        assertFalse(ConfigurationFingerprint.same(property, createProperty("other value")));
+        assertFalse(ConfigurationFingerprint.same(property, null));
+        assertTrue(ConfigurationFingerprint.same(null, null));
+        assertFalse(ConfigurationFingerprint.same(new CommandLauncher("ssh"), property));
+    }
+
+    /**
+     * Tests {@link ConfigurationFingerprint#of(Object)}.
+     * The fingerprint is the digest of the XML, and it is kept for the object.
+     */
+    public void testOf() {
+        EnvironmentVariablesNodeProperty property = createProperty("value");
+        String fingerprint = ConfigurationFingerprint.of(property);
+        assertEquals(ConfigurationFingerprint.compute(property), fingerprint);
+        assertSame(fingerprint, ConfigurationFingerprint.of(property));
+        assertEquals(ConfigurationFingerprint.compute(Jenkins.XSTREAM2.fromXML(Jenkins.XSTREAM2.toXML(property))),
+                fingerprint);
+    }
+
+    /**
+     * Creates a node property with one environment variable.
+     * @param value the value of the variable.
+     * @return the property.
+     */
+    private EnvironmentVariablesNodeProperty createProperty(String value) {
+        return new EnvironmentVariablesNodeProperty(new EnvironmentVariablesNodeProperty.Entry("KEY", value));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Node;
+import hudson.model.queue.QueueTaskFuture;
+import hudson.slaves.DumbSlave;
+import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.SleepBuilder;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Tests {@link DeleteJob} using HudsonTestCases.
+ */
+public class DeleteJobHudsonTest extends HudsonTestCase {
+
+    private static final long WAIT = 60000;
+
+    /**
+     * Tests {@link DeleteJob#start()}.
+     * Slaves that aren't building are deleted right away.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testDeleteIdle() throws Exception {
+        DumbSlave slave1 = new DumbSlave("slave1", "", "/home", "1", Node.Mode.NORMAL, "", null, null,
+                Collections.EMPTY_LIST);
+        DumbSlave slave2 = createOnlineSlave();
+        hudson.addNode(slave1);
+
+        DeleteJob job = new DeleteJob(new NodeList(Arrays.<Node>asList(slave1, slave2)),
+                NodeManageLink.DELETE_TIMEOUT_MINUTES * 60000L);
+        job.start();
+        assertTrue(job.waitFor(WAIT));
+        assertTrue(job.getResult().isSuccessful());
+        assertTrue(hudson.getNodes().isEmpty());
+        assertEquals(0, job.getProgress().getInt("forced"));
+    }
+
+    /**
+     * Tests {@link DeleteJob#start()}.
+     * A busy slave is taken offline and deleted when its build has finished.
+     * @throws Exception if slave creation or the build goes wrong.
+     */
+    public void testDeleteAfterBuild() throws Exception {
+        DumbSlave slave = createOnlineSlave();
+        FreeStyleProject project = createFreeStyleProject();
+        project.setAssignedNode(slave);
+        project.getBuildersList().add(new SleepBuilder(3000));
+        QueueTaskFuture<FreeStyleBuild> build = project.scheduleBuild2(0);
+        build.waitForStart();
+
+        DeleteJob job = new DeleteJob(new NodeList(Arrays.<Node>asList(slave)), WAIT);
+        job.start();
+        assertFalse(job.isFinished());
+        assertTrue(slave.toComputer().getOfflineCause() instanceof DeleteJob.DeletionCause);
+        assertEquals(1, job.getProgress().getInt("waiting"));
+        assertFalse(DeleteJob.isFinishing(slave.toComputer()));
+
+        assertBuildStatusSuccess(build);
+        assertTrue(job.waitFor(WAIT));
+        assertNull(hudson.getNode(slave.getNodeName()));
+        assertEquals(0, job.getProgress().getInt("forced"));
+    }
+
+    /**
+     * Tests {@link DeleteJob#start()}.
+     * A slave that is still building when the deadline has passed is deleted anyway.
+     * @throws Exception if slave creation or the build goes wrong.
+     */
+    public void testDeleteAfterDeadline() throws Exception {
+        DumbSlave slave = createOnlineSlave();
+        FreeStyleProject project = createFreeStyleProject();
+        project.setAssignedNode(slave);
+        project.getBuildersList().add(new SleepBuilder(WAIT));
+        project.scheduleBuild2(0).waitForStart();
+
+        DeleteJob job = new DeleteJob(new NodeList(Arrays.<Node>asList(slave)), 1000);
+        job.start();
+        assertTrue(job.waitFor(WAIT));
+        assertNull(hudson.getNode(slave.getNodeName()));
+        assertEquals(1, job.getProgress().getInt("forced"));
+        assertEquals(1, job.getProgress().getInt("done"));
+    }
+}
@@ -65,7 +65,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
             IOException {
         DumbSlave slave = new DumbSlave(SLAVE_NAME, DESCRIPTION, REMOTE_FS, EXECUTORS, MODE, LABELS,
                 launcher, RETENTION_STRATEGY, Collections.EMPTY_LIST);
-        slave = EnvironmentVariables.fromVariables(slave);
+        slave = NodeSpec.of(slave).fromVariables().build();
         return slave.getLauncher();
     }
 
@@ -86,7 +86,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)} .
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the node description.
      * @throws Descriptor.FormException if the slave creation went wrong
      * @throws IOException if the slave creation went wrong
@@ -96,12 +96,12 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
 
         DumbSlave slave = new DumbSlave(SLAVE_NAME, originalDescription, REMOTE_FS, EXECUTORS, MODE,
                 LABELS, LAUNCHER, RETENTION_STRATEGY, Collections.EMPTY_LIST);
-        slave = EnvironmentVariables.fromVariables(slave);
+        slave = NodeSpec.of(slave).fromVariables().build();
         assertEquals(SLAVE_NAME + "-description", slave.getNodeDescription());
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the remote fs setting.
      * @throws Descriptor.FormException if the slave creation went wrong
      * @throws IOException if the slave creation went wrong
@@ -111,12 +111,12 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
 
         DumbSlave slave = new DumbSlave(SLAVE_NAME, DESCRIPTION, originalRemoteFS, EXECUTORS, MODE,
                 LABELS, LAUNCHER, RETENTION_STRATEGY, Collections.EMPTY_LIST);
-        slave = EnvironmentVariables.fromVariables(slave);
+        slave = NodeSpec.of(slave).fromVariables().build();
         assertEquals(SLAVE_NAME + "/home", slave.getRemoteFS());
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the label string.
      * @throws Descriptor.FormException if the slave creation went wrong
      * @throws IOException if the slave creation went wrong
@@ -126,12 +126,12 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
 
         DumbSlave slave = new DumbSlave(SLAVE_NAME, DESCRIPTION, REMOTE_FS, EXECUTORS, MODE,
                 originalLabels, LAUNCHER, RETENTION_STRATEGY, Collections.EMPTY_LIST);
-        slave = EnvironmentVariables.fromVariables(slave);
+        slave = NodeSpec.of(slave).fromVariables().build();
         assertEquals(SLAVE_NAME, slave.getLabelString());
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in common strings, making sure that strings without environment
      * variables are unchanged.
      * @throws Descriptor.FormException if the slave creation went wrong
@@ -140,14 +140,14 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     public void testFromVariablesCommonStringsWithoutVariables() throws Descriptor.FormException, IOException {
         DumbSlave slave = new DumbSlave(SLAVE_NAME, DESCRIPTION, REMOTE_FS, EXECUTORS, MODE,
                 LABELS, LAUNCHER, RETENTION_STRATEGY, Collections.EMPTY_LIST);
-        slave = EnvironmentVariables.fromVariables(slave);
+        slave = NodeSpec.of(slave).fromVariables().build();
         assertEquals(DESCRIPTION, slave.getNodeDescription());
         assertEquals(REMOTE_FS, slave.getRemoteFS());
         assertEquals(LABELS, slave.getLabelString());
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the command string.
      * @throws Descriptor.FormException if the slave creation went wrong
      * @throws IOException if the slave creation went wrong
@@ -161,7 +161,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the command string, making sure that strings without environment
      * variables are untouched.
      * @throws Descriptor.FormException if the slave creation went wrong
@@ -176,7 +176,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the username string.
      * @throws Descriptor.FormException if the slave creation went wrong
      * @throws IOException if the slave creation went wrong
@@ -191,7 +191,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the username string, making sure that strings without environment
      * variables are untouched.
      * @throws Descriptor.FormException if the slave creation went wrong
@@ -208,7 +208,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the password string.
      * @throws Descriptor.FormException if the slave creation went wrong
      * @throws IOException if the slave creation went wrong
@@ -223,7 +223,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the password string, making sure that strings without environment
      * variables are untouched.
      * @throws Descriptor.FormException if the slave creation went wrong
@@ -240,7 +240,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the tunnel string.
      * @throws IOException if the slave creation went wrong
      * @throws Descriptor.FormException if the slave creation went wrong
@@ -255,7 +255,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the tunnel string, making sure that strings without environment
      * variables are untouched.
      * @throws IOException if the slave creation went wrong
@@ -271,7 +271,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the vmargs string.
      * @throws IOException if the slave creation went wrong
      * @throws Descriptor.FormException if the slave creation went wrong
@@ -286,7 +286,7 @@ public class EnvironmentVariablesHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link EnvironmentVariables#fromVariables(hudson.slaves.DumbSlave)}.
+     * Tests {@link NodeSpec#fromVariables()}.
      * Converting from environment variables in the vmargs string, making sure that strings without environment
      * variables are untouched.
      * @throws IOException if the slave creation went wrong
@@ -0,0 +1,148 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests {@link JenkinsNodes} using HudsonTestCases.
+ */
+public class JenkinsNodesHudsonTest extends HudsonTestCase {
+
+    /**
+     * Tests {@link JenkinsNodes#replace(java.util.Collection)}.
+     * Only the replaced nodes change and they keep their position. Nodes that aren't registered aren't added.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testReplace() throws Exception {
+        DumbSlave slave1 = createSlave("slave1", "old");
+        DumbSlave slave2 = createSlave("slave2", "old");
+        DumbSlave slave3 = createSlave("slave3", "old");
+        hudson.setNodes(Arrays.<Node>asList(slave1, slave2, slave3));
+
+        DumbSlave changed = createSlave("slave2", "new");
+        DumbSlave added = createSlave("slave4", "new");
+        List<String> missing = JenkinsNodes.replace(Arrays.<Node>asList(added, changed));
+
+        assertEquals(Collections.singletonList("slave4"), missing);
+        List<Node> nodes = hudson.getNodes();
+        assertEquals(3, nodes.size());
+        assertSame(slave1, nodes.get(0));
+        assertSame(changed, nodes.get(1));
+        assertSame(slave3, nodes.get(2));
+        assertEquals("new", hudson.getNode("slave2").getNodeDescription());
+    }
+
+    /**
+     * Tests {@link JenkinsNodes#replace(java.util.Collection)}.
+     * Nothing is changed when there is nothing to replace.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testReplaceNothing() throws Exception {
+        DumbSlave slave1 = createSlave("slave1", "old");
+        hudson.addNode(slave1);
+        JenkinsNodes.replace(Collections.<Node>emptyList());
+        assertEquals(1, hudson.getNodes().size());
+        assertSame(slave1, hudson.getNodes().get(0));
+    }
+
+    /**
+     * Tests {@link JenkinsNodes#add(java.util.Collection)}.
+     * New nodes are added last, and nodes with names that are taken are reported and not added.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testAdd() throws Exception {
+        DumbSlave slave1 = createSlave("slave1", "old");
+        hudson.addNode(slave1);
+
+        DumbSlave added = createSlave("slave2", "new");
+        CreationResult result = JenkinsNodes.add(Arrays.<Node>asList(added, createSlave("slave1", "new")));
+
+        assertFalse(result.isSuccessful());
+        assertEquals(1, result.getCreated().size());
+        assertSame(added, result.getCreated().get(0));
+        assertEquals(Collections.singletonList("slave1"), result.getExisting());
+        List<Node> nodes = hudson.getNodes();
+        assertEquals(2, nodes.size());
+        assertSame(slave1, nodes.get(0));
+        assertSame(added, nodes.get(1));
+    }
+
+    /**
+     * Tests {@link JenkinsNodes#remove(java.util.Collection)}.
+     * The other nodes are kept in order, and each node is reported as removed or missing.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testRemove() throws Exception {
+        DumbSlave slave1 = createSlave("slave1", "old");
+        DumbSlave slave2 = createSlave("slave2", "old");
+        DumbSlave slave3 = createSlave("slave3", "old");
+        DumbSlave slave4 = createSlave("slave4", "old");
+        hudson.setNodes(Arrays.<Node>asList(slave1, slave2, slave3, slave4));
+
+        DumbSlave neverAdded = createSlave("slave5", "old");
+        RemovalResult result = JenkinsNodes.remove(Arrays.<Node>asList(slave3, neverAdded, slave1));
+
+        assertTrue(result.isSuccessful());
+        assertEquals(Arrays.asList("slave1", "slave3"), result.getRemoved());
+        assertEquals(Collections.singletonList("slave5"), result.getMissing());
+        List<Node> nodes = hudson.getNodes();
+        assertEquals(2, nodes.size());
+        assertSame(slave2, nodes.get(0));
+        assertSame(slave4, nodes.get(1));
+        assertEquals(2, result.toJSON().getJSONArray("removed").size());
+    }
+
+    /**
+     * Tests {@link JenkinsNodes#remove(java.util.Collection)}.
+     * Nothing is changed when there is nothing to remove.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testRemoveNothing() throws Exception {
+        DumbSlave slave1 = createSlave("slave1", "old");
+        hudson.addNode(slave1);
+        RemovalResult result = JenkinsNodes.remove(Collections.<Node>emptyList());
+        assertTrue(result.getRemoved().isEmpty());
+        assertSame(slave1, hudson.getNodes().get(0));
+    }
+
+    /**
+     * Creates a DumbSlave.
+     * @param name the name.
+     * @param description the description.
+     * @return the slave.
+     * @throws Exception if slave creation goes wrong.
+     */
+    private DumbSlave createSlave(String name, String description) throws Exception {
+        return new DumbSlave(name, description, "/home", "1", Node.Mode.NORMAL, "", null, null,
+                Collections.EMPTY_LIST);
+    }
+}
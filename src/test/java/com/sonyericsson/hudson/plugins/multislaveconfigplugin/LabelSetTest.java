@@ -0,0 +1,114 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link LabelSet} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class })
+public class LabelSetTest {
+
+    /**
+     * Tests {@link LabelSet#parse(String)}.
+     * Any whitespace separates labels, and each label appears once.
+     */
+    @Test
+    public void testParse() {
+        assertEquals("linux gpu x86", LabelSet.parse("  linux\tgpu \n linux  x86 ").toString());
+        assertTrue(LabelSet.parse(null).isEmpty());
+        assertTrue(LabelSet.parse("   ").isEmpty());
+    }
+
+    /**
+     * Tests {@link LabelSet#parse(String)}.
+     * Equal labels from different label strings are the same string.
+     */
+    @Test
+    public void testParseInterned() {
+        String first = LabelSet.parse("linux gpu").getLabels().iterator().next();
+        String second = LabelSet.parse(new StringBuilder("lin").append("ux").toString()).getLabels().iterator().next();
+        assertSame(first, second);
+    }
+
+    /**
+     * Tests {@link LabelSet#with(LabelSet)} and {@link LabelSet#without(LabelSet)}.
+     */
+    @Test
+    public void testWithAndWithout() {
+        LabelSet labels = LabelSet.parse("linux gpu");
+        assertEquals("linux gpu x86", labels.with(LabelSet.parse("gpu x86")).toString());
+        assertEquals("gpu", labels.without(LabelSet.parse("linux windows")).toString());
+        assertEquals("linux gpu", labels.toString());
+        assertTrue(labels.contains("gpu"));
+        assertFalse(labels.contains("gp"));
+    }
+
+    /**
+     * Tests {@link LabelSet#count(Iterable)}.
+     */
+    @Test
+    public void testCount() {
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(mockSlave("linux gpu"));
+        nodes.add(mockSlave("linux"));
+        nodes.add(mockSlave(null));
+        Map<String, Integer> counts = LabelSet.count(nodes);
+        assertEquals(Integer.valueOf(2), counts.get("linux"));
+        assertEquals(Integer.valueOf(1), counts.get("gpu"));
+        assertNull(counts.get("windows"));
+    }
+
+    /**
+     * Creates a mocked DumbSlave.
+     * @param labels the label string.
+     * @return the mock.
+     */
+    private DumbSlave mockSlave(String labels) {
+        DumbSlave slave = mock(DumbSlave.class);
+        when(slave.getLabelString()).thenReturn(labels);
+        return slave;
+    }
+}
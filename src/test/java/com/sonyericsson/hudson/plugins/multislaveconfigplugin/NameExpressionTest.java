@@ -0,0 +1,116 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Failure;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests the {@link NameExpression} using JUnit Tests.
+ */
+public class NameExpressionTest {
+
+    /**
+     * Tests {@link NameExpression#parse(String)}.
+     * Every combination of the ranges is a name, the last range changing fastest.
+     */
+    @Test
+    public void testCartesianProduct() {
+        assertEquals(Arrays.asList("rack01-node1", "rack01-node2", "rack02-node1", "rack02-node2"),
+                toList(NameExpression.parse("rack{01..02}-node{1..2}")));
+        assertEquals(4, NameExpression.parse("rack{01..02}-node{1..2}").size());
+    }
+
+    /**
+     * Tests {@link NameExpression#parse(String)}.
+     * Steps skip numbers, and the last number is only used when it is reached by whole steps.
+     */
+    @Test
+    public void testStep() {
+        assertEquals(Arrays.asList("n01", "n04", "n07", "n10"), toList(NameExpression.parse("n{01..11..3}")));
+    }
+
+    /**
+     * Tests {@link NameExpression#parse(String)}.
+     * Text without braces is a single name.
+     */
+    @Test
+    public void testPlainName() {
+        assertEquals(Collections.singletonList("slave-1"), toList(NameExpression.parse("slave-1")));
+    }
+
+    /**
+     * Tests {@link NameExpression#iterator()}.
+     * A huge expansion is counted without producing it, and names are produced one at a time.
+     */
+    @Test
+    public void testLazy() {
+        NameExpression expression = NameExpression.parse("a{0..999999}b{0..999999}c{0..999999}d{0..999999}");
+        assertEquals(Long.MAX_VALUE, expression.size());
+        Iterator<String> names = expression.iterator();
+        assertEquals("a0b0c0d0", names.next());
+        assertEquals("a0b0c0d1", names.next());
+    }
+
+    /**
+     * Tests {@link NameExpression#parse(String)}.
+     * Malformed expressions are rejected.
+     */
+    @Test
+    public void testParseWrong() {
+        for (String expression : Arrays.asList("a{1..}", "a{1..3", "a}1..3{", "a{3..1}", "a{1..5..0}", "a{x..2}",
+                "a{1..2..3..4}", "a{{1..2}}", "a{1}")) {
+            try {
+                NameExpression.parse(expression);
+                fail("Parsed " + expression);
+            } catch (Failure e) {
+                assertEquals(Messages.WrongNameExpression(expression), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Collects the names of an expression.
+     * @param expression the expression.
+     * @return the names in order.
+     */
+    private static List<String> toList(NameExpression expression) {
+        List<String> names = new ArrayList<String>();
+        for (String name : expression) {
+            names.add(name);
+        }
+        return names;
+    }
+}
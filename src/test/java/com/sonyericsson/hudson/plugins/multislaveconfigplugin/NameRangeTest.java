@@ -0,0 +1,130 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Failure;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests the {@link NameRange} using JUnit Tests.
+ */
+public class NameRangeTest {
+
+    /**
+     * Tests {@link NameRange#parse(String, String, String)}.
+     * The numbers are padded to the length of the first number.
+     */
+    @Test
+    public void testParsePadding() {
+        assertEquals(Arrays.asList("slave08", "slave09", "slave10"), toList(NameRange.parse("slave", "08", "10")));
+        assertEquals(Arrays.asList("slave9", "slave10"), toList(NameRange.parse("slave", "9", "10")));
+        assertEquals(Arrays.asList("slave0001"), toList(NameRange.parse("slave", "0001", "1")));
+    }
+
+    /**
+     * Tests {@link NameRange#parse(String, String, String)}.
+     * Names are only produced when iterated, so a large range is cheap until it is used.
+     */
+    @Test
+    public void testLazy() {
+        NameRange range = NameRange.parse("slave", "0", String.valueOf(Integer.MAX_VALUE));
+        assertEquals(Integer.MAX_VALUE + 1L, range.size());
+        Iterator<String> names = range.iterator();
+        assertEquals("slave0", names.next());
+        assertEquals("slave1", names.next());
+    }
+
+    /**
+     * Tests {@link NameRange#iterator()}.
+     * The iterator stops after the last number.
+     */
+    @Test
+    public void testIteratorEnd() {
+        Iterator<String> names = new NameRange("a", 5, 5, 1).iterator();
+        names.next();
+        assertFalse(names.hasNext());
+    }
+
+    /**
+     * Tests {@link NameRange#get(long)}.
+     * With a step only every step:th number is used.
+     */
+    @Test
+    public void testStep() {
+        NameRange range = new NameRange("n", 1, 6, 2, 2);
+        assertEquals(3, range.size());
+        assertEquals(Arrays.asList("n01", "n03", "n05"), toList(range));
+        assertEquals("n05", range.get(2));
+    }
+
+    /**
+     * Tests {@link NameRange#parse(String, String, String)}.
+     * First must not be greater than last.
+     */
+    @Test(expected = Failure.class)
+    public void testParseWrongOrder() {
+        NameRange.parse("slave", "5", "1");
+    }
+
+    /**
+     * Tests {@link NameRange#parse(String, String, String)}.
+     * The bounds must be numbers.
+     */
+    @Test(expected = Failure.class)
+    public void testParseNotANumber() {
+        NameRange.parse("slave", "one", "2");
+    }
+
+    /**
+     * Tests {@link NameRange#parse(String, String, String)}.
+     * A span with more than the maximum number of names is rejected.
+     */
+    @Test(expected = Failure.class)
+    public void testParseTooMany() {
+        NameRange.parse("slave", "0", String.valueOf(Integer.MAX_VALUE));
+    }
+
+    /**
+     * Collects the names of a range.
+     * @param range the range.
+     * @return the names in order.
+     */
+    private static List<String> toList(NameRange range) {
+        List<String> names = new ArrayList<String>();
+        for (String name : range) {
+            names.add(name);
+        }
+        return names;
+    }
+}
@@ -52,6 +52,8 @@ import java.util.List;
  */
 public class NodeListHudsonTest extends HudsonTestCase {
 
+    private static final long TIMEOUT = 10000;
+
     NodeList nodeList;
     DumbSlave dumbSlave1;
     DumbSlave dumbSlave2;
@@ -71,13 +73,43 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Adds two slaves to nodelist and then changes settings on them according to argument.
+     * Adds two slaves to nodelist, registers them and then changes settings on them according to argument.
      * @param applySettings HashMap with settings to apply.
      */
     protected void changeSettingsHelper(HashMap<String, Object> applySettings) {
         nodeList.add(dumbSlave1);
         nodeList.add(dumbSlave2);
-        nodeList.changeSettings(applySettings);
+        register(nodeList);
+        apply(nodeList, applySettings);
+    }
+
+    /**
+     * Applies settings to nodes the way the plugin does it, see {@link ApplyJob}, and waits for it to finish.
+     * @param nodes the nodes to change.
+     * @param applySettings HashMap with settings to apply.
+     * @return the changed nodes.
+     */
+    protected NodeList apply(NodeList nodes, HashMap<String, Object> applySettings) {
+        ApplyJob job = new ApplyJob(nodes, applySettings, null);
+        job.start();
+        try {
+            assertTrue(job.waitFor(TIMEOUT));
+        } catch (InterruptedException e) {
+            fail("Interrupted while applying the settings");
+        }
+        return job.getResult();
+    }
+
+    /**
+     * Registers nodes in Jenkins, settings are only applied to registered slaves.
+     * @param nodes the nodes, replacing the registered ones.
+     */
+    protected void register(List<Node> nodes) {
+        try {
+            hudson.setNodes(nodes);
+        } catch (IOException e) {
+            fail("Failed to register the slaves: " + e.getMessage());
+        }
     }
 
     /**
@@ -112,7 +144,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Makes sure that changing settings on a NodeList containing other than DumbSlaves
      * keeps the non-DumbSlaves untouched.
      * @throws Exception if creating a pretendSlave goes wrong.
@@ -122,11 +154,12 @@ public class NodeListHudsonTest extends HudsonTestCase {
         PretendSlave pretendSlave = createPretendSlave(null);
         nodeList.add(dumbSlave1);
         nodeList.add(pretendSlave);
+        register(nodeList);
 
         String description = "This is a hard working slave";
         settings.put("description", description);
 
-        nodeList.changeSettings(settings);
+        apply(nodeList, settings);
         List<Node> registeredNodes = hudson.getNodes();
 
         //Checks that the slaves exist only once and that the non-DumbSlave still exists
@@ -136,7 +169,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Changes description.
      */
     public void testChangeSettingsDescription() {
@@ -148,7 +181,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Changes remote FS.
      */
     public void testChangeSettingsRemoteFS() {
@@ -160,7 +193,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Changes number of executors.
      */
     public void testChangeSettingsNumExecutors() {
@@ -172,7 +205,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Sets new labels.
      */
     public void testChangeSettingsSetLabels() {
@@ -185,7 +218,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Adds new labels, also makes sure that already existing labels are not being removed
      * and that slaves which already have the label doesn't get it twice.
      * @throws Descriptor.FormException if slave creation goes wrong.
@@ -204,7 +237,30 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
+     * Registered slaves that the settings don't change are left as they are, the others are replaced.
+     * @throws Descriptor.FormException if slave creation goes wrong.
+     * @throws IOException if slave creation goes wrong.
+     */
+    public void testChangeSettingsUnchanged() throws Descriptor.FormException, IOException {
+        dumbSlave1 = new DumbSlave("dumbSlave1", null, "/home", null, null, "LABEL1 LABEL2", new CommandLauncher("ssh"),
+                new RetentionStrategy.Always(), Collections.EMPTY_LIST);
+        hudson.addNode(dumbSlave1);
+        hudson.addNode(dumbSlave2);
+
+        settings.put("addLabelString", "LABEL2");
+        settings.put("remoteFS", "/home");
+        settings.put("launcher", new CommandLauncher("ssh"));
+        changeSettingsHelper(settings);
+        List<Node> registeredNodes = hudson.getNodes();
+
+        assertSame(dumbSlave1, registeredNodes.get(0));
+        assertNotSame(dumbSlave2, registeredNodes.get(1));
+        assertEquals("LABEL2", registeredNodes.get(1).getLabelString());
+    }
+
+    /**
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Removes labels on slaves, also making sure that the plugin understands that the slaves
      * had different label strings before making the change.
      * @throws Descriptor.FormException if slave creation goes wrong.
@@ -224,7 +280,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Sets mode.
      */
     public void testChangeSettingsMode() {
@@ -237,7 +293,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Sets launcher.
      */
     public void testChangeSettingsLauncher() {
@@ -251,7 +307,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Sets RetentionStrategy.
      * @throws ANTLRException if creating RetentionStrategy goes wrong.
      */
@@ -266,7 +322,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Tests that the Node properties are modified according to the desired precedence.
      * Remove should remove only the current properties.
      * Add should replace any current properties.
@@ -274,6 +330,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
     public void testPrecedenceOfNodeProperties() {
         nodeList.add(dumbSlave1);
         nodeList.add(dumbSlave2);
+        register(nodeList);
 
         NodeProperty<?> toolLocationNodeProperty = new ToolLocationNodeProperty();
         EnvironmentVariablesNodeProperty environmentVariablesNodeProperty =
@@ -284,8 +341,8 @@ public class NodeListHudsonTest extends HudsonTestCase {
         list.add(toolLocationNodeProperty);
 
         settings.put("addOrChangeProperties", list);
-        nodeList.changeSettings(settings);
-        settings.remove("addOrChangeProperties");
+        NodeList changedNodes = apply(nodeList, settings);
+        settings = new HashMap<String, Object>();
 
         // Remove the EnvironmentVariablesNodeProperty
         String className = EnvironmentVariablesNodeProperty.DescriptorImpl.class.getName();
@@ -304,7 +361,7 @@ public class NodeListHudsonTest extends HudsonTestCase {
         settings.put("addOrChangeProperties", list);
         settings.put("removeProperties", removeList);
 
-        nodeList.changeSettings(settings);
+        apply(changedNodes, settings);
 
         List<Node> registeredNodes = hudson.getNodes();
 
@@ -321,21 +378,6 @@ public class NodeListHudsonTest extends HudsonTestCase {
         }
     }
 
-    /**
-     * Tests {@link com.sonyericsson.hudson.plugins.multislaveconfigplugin.NodeList#getComplementaryNodes()}.
-     * Makes sure the tested method returns the correct slave
-     * when there should be one "complementary slave".
-     * @throws IOException if adding nodes goes wrong.
-     */
-    public void testGetComplementarySlaves() throws IOException {
-        nodeList.add(dumbSlave1);
-        hudson.addNode(dumbSlave1);
-        hudson.addNode(dumbSlave2);
-
-        assertEquals(1, nodeList.getComplementaryNodes().size());
-        assertEquals(dumbSlave2, nodeList.getComplementaryNodes().get(0));
-    }
-
     /**
      * Tests {@link com.sonyericsson.hudson.plugins.multislaveconfigplugin.NodeList#getLauncher()}.
      * The list contains slaves with totally different launcher types.
@@ -0,0 +1,137 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Hudson;
+import hudson.model.Node;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Checks that the membership checks of {@link NodeList} stay linear in the number of nodes using JUnit Tests.
+ * Half of the registered nodes are selected. Instead of timing the checks, the reads of the registered node list
+ * and the calls to getNodeName are counted. A linear scan per node would read the list once per selected node.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ Hudson.class })
+public class NodeListScaleTest {
+
+    private static final int SMALL = 100;
+    private static final int LARGE = 5000;
+
+    /**
+     * Checks 100 nodes.
+     */
+    @Test
+    public void testSmall() {
+        check(SMALL);
+    }
+
+    /**
+     * Checks 5 000 nodes.
+     */
+    @Test
+    public void testLarge() {
+        check(LARGE);
+    }
+
+    /**
+     * Registers the given number of nodes, selects every other one and checks {@link NodeList#slavesStillExist()}.
+     * It may read every registered node once, and ask each node for its name once.
+     * @param nbrOfNodes the number of registered nodes.
+     */
+    private void check(int nbrOfNodes) {
+        List<Node> allNodes = new ArrayList<Node>(nbrOfNodes);
+        for (int i = 0; i < nbrOfNodes; i++) {
+            Node node = Mockito.mock(Node.class);
+            Mockito.when(node.getNodeName()).thenReturn("slave" + i);
+            allNodes.add(node);
+        }
+        CountingList registered = new CountingList(allNodes);
+        Hudson hudsonMock = mock(Hudson.class);
+        mockStatic(Hudson.class);
+        when(Hudson.getInstance()).thenReturn(hudsonMock);
+        when(hudsonMock.getNodes()).thenReturn(registered);
+
+        NodeList selected = new NodeList();
+        for (int i = 0; i < nbrOfNodes; i += 2) {
+            selected.add(allNodes.get(i));
+        }
+
+        assertTrue(selected.slavesStillExist());
+        assertTrue(registered.reads <= nbrOfNodes);
+        for (int i = 0; i < nbrOfNodes; i++) {
+            //Once as registered node, once more if selected.
+            verify(allNodes.get(i), atMost(2)).getNodeName();
+        }
+
+        Node deleted = Mockito.mock(Node.class);
+        Mockito.when(deleted.getNodeName()).thenReturn("deleted");
+        selected.add(deleted);
+        assertFalse(selected.slavesStillExist());
+    }
+
+    /**
+     * A read only list that counts how many of its elements are read.
+     */
+    private static class CountingList extends AbstractList<Node> {
+        private final List<Node> nodes;
+        private int reads;
+
+        /**
+         * Standard constructor.
+         * @param nodes the nodes in the list.
+         */
+        CountingList(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public Node get(int index) {
+            reads++;
+            return nodes.get(index);
+        }
+
+        @Override
+        public int size() {
+            return nodes.size();
+        }
+    }
+}
@@ -510,6 +510,31 @@ public class NodeListTest {
         assertEquals(label, nodeList.getCommon(LABELS));
     }
 
+    /**
+     * Tests {@link NodeList#getCommon(Setting)}.
+     * A common setting is only worked out once, until the list changes.
+     */
+    @Test
+    public void testGetCommonMemoized() {
+        when(dumbSlave1.getLabelString()).thenReturn("LABEL");
+        when(dumbSlave2.getLabelString()).thenReturn("LABEL");
+        when(dumbSlave3.getLabelString()).thenReturn("OTHER");
+        nodeList.add(dumbSlave1);
+        nodeList.add(dumbSlave2);
+
+        assertEquals("LABEL", nodeList.getCommon(LABELS));
+        assertEquals("LABEL", nodeList.getCommon(LABELS));
+        Mockito.verify(dumbSlave2, Mockito.times(1)).getLabelString();
+
+        nodeList.add(dumbSlave3);
+        assertNull(nodeList.getCommon(LABELS));
+        assertNull(nodeList.getCommon(LABELS));
+        Mockito.verify(dumbSlave2, Mockito.times(2)).getLabelString();
+
+        nodeList.set(2, dumbSlave1);
+        assertEquals("LABEL", nodeList.getCommon(LABELS));
+    }
+
     /**
      * Tests {@link NodeList#getCommon(Setting)}.
      * The slaves don't have a common label String.
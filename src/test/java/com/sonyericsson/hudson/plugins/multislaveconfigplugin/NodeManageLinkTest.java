@@ -48,8 +48,11 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 
 import static com.sonyericsson.hudson.plugins.multislaveconfigplugin.NodeManageLink.ICON;
 import static com.sonyericsson.hudson.plugins.multislaveconfigplugin.NodeManageLink.URL;
@@ -60,6 +63,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
@@ -169,7 +173,7 @@ public class NodeManageLinkTest {
      */
     @Test
     public void testIsConfigureMode() {
-        nodeManageLink.userMode.put("currentUserId", CONFIGURE);
+        nodeManageLink.sessionStates.getOrCreate("currentUserId").setUserMode(CONFIGURE);
         assertTrue(nodeManageLink.isConfigureMode());
     }
 
@@ -179,7 +183,7 @@ public class NodeManageLinkTest {
      */
     @Test
     public void testIsConfigureModeFalse() {
-        nodeManageLink.userMode.put("currentUserId", DELETE);
+        nodeManageLink.sessionStates.getOrCreate("currentUserId").setUserMode(DELETE);
         assertFalse(nodeManageLink.isConfigureMode());
     }
 
@@ -189,7 +193,7 @@ public class NodeManageLinkTest {
      */
     @Test
     public void testIsDeleteMode() {
-        nodeManageLink.userMode.put("currentUserId", DELETE);
+        nodeManageLink.sessionStates.getOrCreate("currentUserId").setUserMode(DELETE);
         assertTrue(nodeManageLink.isDeleteMode());
     }
 
@@ -199,7 +203,7 @@ public class NodeManageLinkTest {
      */
     @Test
     public void testIsDeleteModeFalse() {
-        nodeManageLink.userMode.put("currentUserId", CONFIGURE);
+        nodeManageLink.sessionStates.getOrCreate("currentUserId").setUserMode(CONFIGURE);
         assertFalse(nodeManageLink.isDeleteMode());
     }
 
@@ -220,8 +224,8 @@ public class NodeManageLinkTest {
      */
     @Test
     public void testPutUserModeConfigure() {
-        nodeManageLink.userMode.put("currentUserId", CONFIGURE);
-        assertEquals(nodeManageLink.userMode.get("currentUserId"), CONFIGURE);
+        nodeManageLink.sessionStates.getOrCreate("currentUserId").setUserMode(CONFIGURE);
+        assertEquals(nodeManageLink.sessionStates.get("currentUserId").getUserMode(), CONFIGURE);
     }
 
     /**
@@ -230,8 +234,8 @@ public class NodeManageLinkTest {
      */
     @Test
     public void testPutUserModeDelete() {
-        nodeManageLink.userMode.put("currentUserId", DELETE);
-        assertEquals(nodeManageLink.userMode.get("currentUserId"), DELETE);
+        nodeManageLink.sessionStates.getOrCreate("currentUserId").setUserMode(DELETE);
+        assertEquals(nodeManageLink.sessionStates.get("currentUserId").getUserMode(), DELETE);
     }
 
     /**
@@ -240,19 +244,19 @@ public class NodeManageLinkTest {
      */
     @Test
     public void testPutUserModeAdd() {
-        nodeManageLink.userMode.put("currentUserId", ADD);
-        assertEquals(nodeManageLink.userMode.get("currentUserId"), ADD);
+        nodeManageLink.sessionStates.getOrCreate("currentUserId").setUserMode(ADD);
+        assertEquals(nodeManageLink.sessionStates.get("currentUserId").getUserMode(), ADD);
     }
 
     /**
-     * Tests {@link NodeManageLink#doSearch(String, net.sf.json.JSONObject)}.
+     * Tests {@link NodeManageLink#doSearch(String, net.sf.json.JSONObject, int)}.
      * Checks that a hudson Failure is being thrown when redirecting without having any slaves in the system and
      * usermode is configure.
      * @throws IOException if so.
      */
     @Test (expected = Failure.class)
     public void testDoSearchRedirectTestEmptyList() throws IOException {
-        nodeManageLink.userMode.put("currentUserId", CONFIGURE);
+        nodeManageLink.sessionStates.getOrCreate("currentUserId").setUserMode(CONFIGURE);
         when(hudsonMock.getNodes()).thenReturn(Collections.<Node>emptyList());
         nodeManageLink.doConfigureRedirect(staplerRequestMock, staplerResponse);
     }
@@ -266,7 +270,7 @@ public class NodeManageLinkTest {
      */
     @Test (expected = Failure.class)
     public void testDoDeleteRedirectEmptyList() throws IOException {
-        nodeManageLink.userMode.put("currentUserId", DELETE);
+        nodeManageLink.sessionStates.getOrCreate("currentUserId").setUserMode(DELETE);
         when(hudsonMock.getNodes()).thenReturn(Collections.<Node>emptyList());
         nodeManageLink.doDeleteRedirect(staplerRequestMock, staplerResponse);
     }
@@ -280,6 +284,20 @@ public class NodeManageLinkTest {
         assertNull(nodeManageLink.getNodeList("differentUserId"));
     }
 
+    /**
+     * Tests {@link NodeManageLink#doSelectPropertyVariant(StaplerRequest, StaplerResponse, String, String)}.
+     * Shall throw failure when the session has no selected slaves, like when the URL is opened directly.
+     * @throws IOException if so.
+     */
+    @Test (expected = Failure.class)
+    public void testSelectPropertyVariantWithoutNodeList() throws IOException {
+        HttpSession newSession = mock(HttpSession.class);
+        when(newSession.getId()).thenReturn("newUserId");
+        StaplerRequest request = mock(StaplerRequest.class);
+        when(request.getSession()).thenReturn(newSession);
+        nodeManageLink.doSelectPropertyVariant(request, staplerResponse, "descriptor", "fingerprint");
+    }
+
     /**
      * Tests {@link NodeManageLink#getSlaveNames(String, String, String, String)}.
      * Test with null nodeNames string parameter.
@@ -304,6 +322,17 @@ public class NodeManageLinkTest {
         assertTrue(names.contains("Slave2"));
     }
 
+    /**
+     * Tests {@link NodeManageLink#getSlaveNames(String, String, String, String)}.
+     * Names with ranges are expanded, in the order they were given.
+     */
+    @Test
+    public void testGetSlaveNamesExpression() {
+        names = nodeManageLink.getSlaveNames("rack{1..2}-node{01..02} Slave", null, null, null);
+        assertEquals(Arrays.asList("rack1-node01", "rack1-node02", "rack2-node01", "rack2-node02", "Slave"),
+                new ArrayList<String>(names));
+    }
+
     /**
      * Tests {@link NodeManageLink#getSlaveNames(String, String, String, String)}.
      * Test with non digit string parameter. Shall throw failure.
@@ -328,10 +357,61 @@ public class NodeManageLinkTest {
      */
     @Test (expected = Failure.class)
     public void testGetSlaveNamesExistingNodeName() {
-        when(hudsonMock.getNode("TestSlave")).thenReturn(dumbSlaveMock);
+        when(hudsonMock.getNodes()).thenReturn(Collections.<Node>singletonList(dumbSlaveMock));
         names = nodeManageLink.getSlaveNames("TestSlave", "Slave", "1", "5");
     }
 
+    /**
+     * Tests {@link NodeManageLink#getSlaveNames(String, String, String, String)}.
+     * When many of the names are taken only the first few are listed, the others are counted.
+     */
+    @Test
+    public void testGetSlaveNamesManyExisting() {
+        List<Node> registered = new ArrayList<Node>();
+        for (int i = 0; i < NodeManageLink.MAX_LISTED_NAMES + 5; i++) {
+            DumbSlave slave = PowerMockito.mock(DumbSlave.class);
+            when(slave.getNodeName()).thenReturn(String.format("Slave%02d", i));
+            registered.add(slave);
+        }
+        when(hudsonMock.getNodes()).thenReturn(registered);
+        try {
+            nodeManageLink.getSlaveNames(null, "Slave", "00", "99");
+            fail("Existing slaves were not found");
+        } catch (Failure e) {
+            assertEquals(Messages.SomeSlavesAlreadyExist(NodeManageLink.MAX_LISTED_NAMES + 5,
+                    "Slave00 Slave01 Slave02 Slave03 Slave04 Slave05 Slave06 Slave07 Slave08 Slave09", 5),
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Tests {@link NodeManageLink#getSlaveNames(String, String, String, String)}.
+     * A huge span is rejected before any names are produced.
+     */
+    @Test
+    public void testGetSlaveNamesTooMany() {
+        try {
+            nodeManageLink.getSlaveNames(null, "Slave", "0", String.valueOf(Integer.MAX_VALUE));
+            fail("The span was not limited");
+        } catch (Failure e) {
+            assertEquals(Messages.TooManySlaves((long)Integer.MAX_VALUE + 1, NameRange.MAX_NAMES), e.getMessage());
+        }
+    }
+
+    /**
+     * Tests {@link NodeManageLink#getSlaveNames(String, String, String, String)}.
+     * The names of all expressions and the span count together towards the maximum.
+     */
+    @Test
+    public void testGetSlaveNamesTooManyExpressions() {
+        try {
+            nodeManageLink.getSlaveNames("rack{1..1000}-node{1..1000} single", "Slave", "1", "10");
+            fail("The expressions were not limited");
+        } catch (Failure e) {
+            assertEquals(Messages.TooManySlaves(1000011L, NameRange.MAX_NAMES), e.getMessage());
+        }
+    }
+
     /**
      * Tests{@link NodeManageLink#isCommandLauncher(hudson.slaves.ComputerLauncher)}.
      * Testing that a CommandLauncher makes this method return true.
@@ -37,7 +37,6 @@ import org.jvnet.hudson.test.JenkinsRule;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -50,6 +49,8 @@ import static org.junit.Assert.assertTrue;
  */
 public class NodePropertiesTest {
 
+    private static final long TIMEOUT = 10000;
+
     /**
      * Jenkins rule instance.
      */
@@ -70,6 +71,20 @@ public class NodePropertiesTest {
         slave1 = jenkinsRule.createSlave();
     }
 
+    /**
+     * Applies settings to slaves the way the plugin does it, see {@link ApplyJob}, and waits for it to finish.
+     * @param nodeList the slaves to change.
+     * @param settings the settings to apply.
+     * @return the changed slaves.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    private NodeList apply(NodeList nodeList, HashMap settings) throws InterruptedException {
+        ApplyJob job = new ApplyJob(nodeList, settings, null);
+        job.start();
+        assertTrue(job.waitFor(TIMEOUT));
+        return job.getResult();
+    }
+
     /**
      * Tests that the list of common {@link NodeProperty}s is empty
      * when no slaves have any node properties.
@@ -163,21 +178,22 @@ public class NodePropertiesTest {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Sets node properties for the selected slaves.
+     * @throws Exception if something goes wrong
      */
     @Test
-    public void testAddOrChangeSettingsNodeProperties() {
+    public void testAddOrChangeSettingsNodeProperties() throws Exception {
         NodeList nodeList = new NodeList();
         nodeList.add(slave0);
         nodeList.add(slave1);
-        Map settings = new HashMap();
+        HashMap settings = new HashMap();
 
         NodeProperty<?> property = new EnvironmentVariablesNodeProperty();
         List<NodeProperty<?>> list = new ArrayList<NodeProperty<?>>();
         list.add(property);
         settings.put("addOrChangeProperties", list);
-        nodeList.changeSettings(settings);
+        apply(nodeList, settings);
 
         List<Node> registeredNodes = jenkinsRule.getInstance().getNodes();
 
@@ -186,7 +202,7 @@ public class NodePropertiesTest {
     }
 
     /**
-     * Tests {@link NodeList#changeSettings(java.util.Map)}.
+     * Tests {@link NodeList#changeSettings(Node, java.util.Map)}.
      * Removes node properties for the selected slaves.
      * @throws Exception if Settings can't be removed
      */
@@ -195,15 +211,15 @@ public class NodePropertiesTest {
         NodeList nodeList = new NodeList();
         nodeList.add(slave0);
         nodeList.add(slave1);
-        Map settings = new HashMap();
+        HashMap settings = new HashMap();
 
         NodeProperty<?> property = new EnvironmentVariablesNodeProperty();
         List<NodeProperty<?>> list = new ArrayList<NodeProperty<?>>();
         list.add(property);
         settings.put("addOrChangeProperties", list);
 
-        nodeList.changeSettings(settings);
-        settings.clear();
+        NodeList changedNodes = apply(nodeList, settings);
+        settings = new HashMap();
 
         String className = EnvironmentVariablesNodeProperty.class.getName();
         List<String> removeList = new ArrayList<String>();
@@ -211,7 +227,7 @@ public class NodePropertiesTest {
 
         settings.put("removeProperties", removeList);
 
-        nodeList.changeSettings(settings);
+        apply(changedNodes, settings);
 
         List<Node> registeredNodes = jenkinsRule.getInstance().getNodes();
 
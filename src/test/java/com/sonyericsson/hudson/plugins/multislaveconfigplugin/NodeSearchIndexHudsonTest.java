@@ -0,0 +1,141 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.JNLPLauncher;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.RetentionStrategy;
+import net.sf.json.JSONObject;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests the label expressions of {@link NodeSearchIndex} and {@link SearchQuery} using HudsonTestCases.
+ */
+public class NodeSearchIndexHudsonTest extends HudsonTestCase {
+
+    private NodeSearchIndex index;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(createSlave("slave0", "linux docker"));
+        nodes.add(createSlave("slave1", "linux"));
+        nodes.add(createSlave("slave2", "windows gpu"));
+        nodes.add(createSlave("slave3", "linux docker gpu"));
+        index = new NodeSearchIndex(nodes);
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#getCandidatesByLabel(hudson.model.Label)}.
+     * @throws Exception if the expression can't be parsed.
+     */
+    public void testGetCandidatesByLabel() throws Exception {
+        assertEquals("[1, 2, 3]", candidates("linux && !docker || gpu"));
+        assertEquals("[0, 1, 3]", candidates("linux"));
+        assertEquals("[2]", candidates("(gpu -> windows) && !linux"));
+        assertEquals("[0, 2, 3]", candidates("linux <-> docker && linux"));
+        assertEquals("[]", candidates("mac"));
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#getCandidatesByLabel(hudson.model.Label)}.
+     * The name of a slave counts as one of its labels.
+     * @throws Exception if the expression can't be parsed.
+     */
+    public void testGetCandidatesByLabelSelf() throws Exception {
+        assertEquals("[0, 2]", candidates("slave0 || slave2"));
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#matchesLabel(hudson.model.Label, int)}.
+     * Checking the slaves one by one gives the same slaves as evaluating the whole index.
+     * @throws Exception if the expression can't be parsed.
+     */
+    public void testMatchesLabel() throws Exception {
+        String[] expressions = {"linux && !docker || gpu", "(gpu -> windows) && !linux",
+                "linux <-> docker && linux", "slave0 || slave2", "mac"};
+        for (String expression : expressions) {
+            Label label = Label.parseExpression(expression);
+            List<Integer> matching = new ArrayList<Integer>();
+            for (int ordinal = 0; ordinal < index.size(); ordinal++) {
+                if (index.matchesLabel(label, ordinal)) {
+                    matching.add(ordinal);
+                }
+            }
+            assertEquals(expression, candidates(expression), matching.toString());
+        }
+    }
+
+    /**
+     * Tests {@link SearchQuery#search(NodeSearchIndex)} with a label expression.
+     * The index and the per slave check agree, and an expression that can't be parsed matches nothing.
+     */
+    public void testSearchLabelExpression() {
+        JSONObject searchParameters = new JSONObject();
+        searchParameters.put("labelExpression", true);
+        searchParameters.put("labels", "linux && !docker || gpu");
+        NodeList result = SearchQuery.compile(searchParameters).search(index).toNodeList();
+        assertEquals(3, result.size());
+        assertEquals("slave1", result.get(0).getNodeName());
+        assertTrue(SearchQuery.compile(searchParameters).matches(index.getSlave(2)));
+        assertFalse(SearchQuery.compile(searchParameters).matches(index.getSlave(0)));
+        NodeSet all = SearchQuery.compile(new JSONObject()).search(index);
+        assertEquals(3, SearchQuery.compile(searchParameters).filter(all).size());
+
+        searchParameters.put("labels", "linux &&");
+        assertEquals(0, SearchQuery.compile(searchParameters).search(index).size());
+    }
+
+    /**
+     * Evaluates a label expression in the index.
+     * @param expression the label expression.
+     * @return the matching ordinals.
+     * @throws Exception if the expression can't be parsed.
+     */
+    private String candidates(String expression) throws Exception {
+        return Arrays.toString(index.getCandidatesByLabel(Label.parseExpression(expression)));
+    }
+
+    /**
+     * Creates a DumbSlave.
+     * @param name the name.
+     * @param labels the label string.
+     * @return the slave.
+     * @throws Exception if slave creation goes wrong.
+     */
+    private DumbSlave createSlave(String name, String labels) throws Exception {
+        return new DumbSlave(name, "", "/home/" + name, "1", Node.Mode.NORMAL, labels, new JNLPLauncher(),
+                new RetentionStrategy.Always(), new ArrayList<NodeProperty<?>>());
+    }
+}
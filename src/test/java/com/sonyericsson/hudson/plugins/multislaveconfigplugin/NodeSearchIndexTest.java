@@ -0,0 +1,175 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link NodeSearchIndex} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class, Hudson.class })
+public class NodeSearchIndexTest {
+
+    private Hudson hudsonMock;
+    private List<Node> nodes;
+    private NodeSearchIndex index;
+
+    /**
+     * Creates a few mocked DumbSlaves and indexes them.
+     */
+    @Before
+    public void setup() {
+        nodes = new ArrayList<Node>();
+        nodes.add(mockSlave("build-eu-01", "linux gpu", "/home/build-eu-01", "In Lund"));
+        nodes.add(mockSlave("build-eu-02", "linux", "/jenkins/root", "In Lund"));
+        nodes.add(mockSlave("test-us-01", "windows", "/jenkins/root", ""));
+
+        hudsonMock = mock(Hudson.class);
+        mockStatic(Hudson.class);
+        when(Hudson.getInstance()).thenReturn(hudsonMock);
+        when(hudsonMock.getNodes()).thenReturn(nodes);
+
+        NodeSearchIndex.invalidate();
+        index = NodeSearchIndex.getIndex();
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#getCandidates(NodeSearchIndex.Field, String)}.
+     * Tokens longer than the n-grams are found by intersecting their n-grams.
+     */
+    @Test
+    public void testGetCandidatesLongToken() {
+        assertArrayEquals(new int[]{0, 1}, index.getCandidates(NodeSearchIndex.Field.NAME, "BUILD-eu"));
+        assertArrayEquals(new int[]{}, index.getCandidates(NodeSearchIndex.Field.NAME, "build-us"));
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#getCandidates(NodeSearchIndex.Field, String)}.
+     * Short tokens are looked up directly.
+     */
+    @Test
+    public void testGetCandidatesShortToken() {
+        assertArrayEquals(new int[]{0}, index.getCandidates(NodeSearchIndex.Field.LABELS, "gp"));
+        assertArrayEquals(new int[]{0, 1}, index.getCandidates(NodeSearchIndex.Field.LABELS, "linux l"));
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#getCandidates(NodeSearchIndex.Field, String)}.
+     * Values with the node name in them are also found by $NAME.
+     */
+    @Test
+    public void testGetCandidatesEnvironmentVariables() {
+        assertArrayEquals(new int[]{0}, index.getCandidates(NodeSearchIndex.Field.REMOTE_FS, "/home/$NAME"));
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#getCandidates(NodeSearchIndex.Field, String)}.
+     * An empty search doesn't narrow anything.
+     */
+    @Test
+    public void testGetCandidatesEmpty() {
+        assertNull(index.getCandidates(NodeSearchIndex.Field.DESCRIPTION, ""));
+        assertNull(index.getCandidates(NodeSearchIndex.Field.DESCRIPTION, null));
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#getCandidatesByNames(java.util.Collection)} and
+     * {@link NodeSearchIndex#getCandidatesByExecutors(int)}.
+     */
+    @Test
+    public void testGetCandidatesByNamesAndExecutors() {
+        assertArrayEquals(new int[]{0, 2},
+                index.getCandidatesByNames(Arrays.asList("test-us-01", "missing", "build-eu-01")));
+        assertArrayEquals(new int[]{0, 1, 2}, index.getCandidatesByExecutors(1));
+        assertArrayEquals(new int[]{}, index.getCandidatesByExecutors(2));
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#getIndex()}.
+     * The index is reused as long as the node list is the same, and rebuilt when it changes.
+     */
+    @Test
+    public void testGetIndexRebuild() {
+        assertSame(index, NodeSearchIndex.getIndex());
+        List<Node> changed = new ArrayList<Node>(nodes);
+        changed.add(mockSlave("new-slave", "", "", ""));
+        when(hudsonMock.getNodes()).thenReturn(changed);
+        NodeSearchIndex rebuilt = NodeSearchIndex.getIndex();
+        assertNotSame(index, rebuilt);
+        assertEquals(4, rebuilt.size());
+        assertTrue(rebuilt.getGeneration() > index.getGeneration());
+    }
+
+    /**
+     * Tests {@link NodeSearchIndex#intersect(int[], int[])}.
+     */
+    @Test
+    public void testIntersect() {
+        assertArrayEquals(new int[]{2, 5}, NodeSearchIndex.intersect(new int[]{1, 2, 5, 7}, new int[]{2, 3, 5}));
+        assertArrayEquals(new int[]{1}, NodeSearchIndex.intersect(null, new int[]{1}));
+        assertNull(NodeSearchIndex.intersect(null, null));
+    }
+
+    /**
+     * Creates a mocked DumbSlave.
+     * @param name the name.
+     * @param labels the label string.
+     * @param remoteFS the remote FS root.
+     * @param description the description.
+     * @return the mock.
+     */
+    private DumbSlave mockSlave(String name, String labels, String remoteFS, String description) {
+        DumbSlave slave = PowerMockito.mock(DumbSlave.class);
+        when(slave.getNodeName()).thenReturn(name);
+        when(slave.getLabelString()).thenReturn(labels);
+        when(slave.getRemoteFS()).thenReturn(remoteFS);
+        when(slave.getNodeDescription()).thenReturn(description);
+        when(slave.getNumExecutors()).thenReturn(1);
+        return slave;
+    }
+}
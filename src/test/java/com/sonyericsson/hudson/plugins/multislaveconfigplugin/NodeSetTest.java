@@ -0,0 +1,109 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link NodeSet} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class })
+public class NodeSetTest {
+
+    private NodeSearchIndex index;
+
+    /**
+     * Indexes a few mocked DumbSlaves, not in name order.
+     */
+    @Before
+    public void setup() {
+        List<Node> nodes = new ArrayList<Node>();
+        for (String name : Arrays.asList("slave3", "slave1", "slave4", "slave2")) {
+            DumbSlave slave = PowerMockito.mock(DumbSlave.class);
+            when(slave.getNodeName()).thenReturn(name);
+            nodes.add(slave);
+        }
+        index = new NodeSearchIndex(nodes);
+    }
+
+    /**
+     * Tests {@link NodeSet#toNodeList(int, int)}.
+     * The slaves come in name order.
+     */
+    @Test
+    public void testToNodeList() {
+        NodeSet all = set("slave1", "slave2", "slave3", "slave4");
+        assertEquals(4, all.size());
+        assertEquals("slave1 slave2 slave3 slave4", all.toNodeList().toString());
+        assertEquals("slave2 slave3", all.toNodeList(1, 2).toString());
+        assertEquals(0, all.toNodeList(4, 2).size());
+    }
+
+    /**
+     * Tests {@link NodeSet#contains(int)} and {@link NodeSet#nextOrdinal(int)}.
+     */
+    @Test
+    public void testContains() {
+        NodeSet set = set("slave1", "slave3");
+        assertEquals(2, set.size());
+        assertTrue(set.contains(index.getOrdinal("slave1")));
+        assertFalse(set.contains(index.getOrdinal("slave2")));
+        assertFalse(set.contains(index.getOrdinal("missing")));
+        assertEquals(index.getOrdinal("slave3"), set.nextOrdinal(index.getOrdinal("slave2")));
+        assertTrue(new NodeSet(index, new BitSet()).isEmpty());
+    }
+
+    /**
+     * Creates a set of slaves in the index.
+     * @param names the names of the slaves.
+     * @return the set.
+     */
+    private NodeSet set(String... names) {
+        BitSet ordinals = new BitSet();
+        for (String name : names) {
+            ordinals.set(index.getOrdinal(name));
+        }
+        return new NodeSet(index, ordinals);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.CommandLauncher;
+import hudson.slaves.ComputerLauncher;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.NodePropertyDescriptor;
+import hudson.slaves.RetentionStrategy;
+import hudson.util.DescribableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link NodeSpec} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class, DescribableList.class })
+public class NodeSpecTest {
+
+    /**
+     * Tests {@link NodeSpec#copyOf(String, hudson.slaves.DumbSlave)}.
+     * All settings are taken from the template, but not the name.
+     */
+    @Test
+    public void testCopyOf() {
+        DumbSlave template = mockSlave("template");
+        ComputerLauncher launcher = template.getLauncher();
+        RetentionStrategy retentionStrategy = template.getRetentionStrategy();
+        NodeProperty<?> property = template.getNodeProperties().toList().get(0);
+
+        NodeSpec spec = NodeSpec.copyOf("copy", template);
+        assertEquals("copy", spec.getName());
+        assertEquals("description", spec.getDescription());
+        assertEquals("/home/$NAME", spec.getRemoteFS());
+        assertEquals("2", spec.getNumExecutors());
+        assertEquals(Node.Mode.EXCLUSIVE, spec.getMode());
+        assertEquals("linux", spec.getLabelString());
+        assertSame(launcher, spec.getLauncher());
+        assertSame(retentionStrategy, spec.getRetentionStrategy());
+        List<NodeProperty<?>> copiedProperties = spec.getNodeProperties();
+        assertEquals(1, copiedProperties.size());
+        assertSame(property, copiedProperties.get(0));
+    }
+
+    /**
+     * Tests {@link NodeSpec#isUnchanged(hudson.slaves.DumbSlave)}.
+     * Values are compared the way the slave would store them.
+     */
+    @Test
+    public void testIsUnchanged() {
+        DumbSlave slave = mockSlave("slave1");
+        NodeSpec spec = NodeSpec.of(slave);
+        assertTrue(spec.isUnchanged(slave));
+
+        spec.setLabelString(" linux  ");
+        spec.setRemoteFS("/home/$NAME ");
+        assertTrue(spec.isUnchanged(slave));
+
+        spec.setNumExecutors("3");
+        assertFalse(spec.isUnchanged(slave));
+        spec.setNumExecutors("2");
+        spec.setLabelString("linux gpu");
+        assertFalse(spec.isUnchanged(slave));
+        spec.setLabelString("linux");
+        spec.setNodeProperties(new ArrayList<NodeProperty<?>>());
+        assertFalse(spec.isUnchanged(slave));
+        assertFalse(NodeSpec.copyOf("slave2", slave).isUnchanged(slave));
+    }
+
+    /**
+     * Tests {@link NodeSpec#fromVariables()}.
+     * Environment variables are switched in the spec itself.
+     */
+    @Test
+    public void testFromVariables() {
+        NodeSpec spec = new NodeSpec("slave1");
+        spec.setDescription("Slave $NAME");
+        spec.setRemoteFS("/home/$NAME");
+        spec.setLabelString("linux $NAME");
+        spec.setLauncher(new CommandLauncher("ssh $NAME"));
+
+        assertSame(spec, spec.fromVariables());
+        assertEquals("Slave slave1", spec.getDescription());
+        assertEquals("/home/slave1", spec.getRemoteFS());
+        assertEquals("linux slave1", spec.getLabelString());
+        assertEquals("ssh slave1", ((CommandLauncher)spec.getLauncher()).getCommand());
+    }
+
+    /**
+     * Tests {@link NodeSpec#fromVariables()}.
+     * A launcher without environment variables is kept as it is.
+     */
+    @Test
+    public void testFromVariablesKeepsLauncher() {
+        ComputerLauncher launcher = new CommandLauncher("ssh host");
+        NodeSpec spec = new NodeSpec("slave1");
+        spec.setLauncher(launcher);
+        assertSame(launcher, spec.fromVariables().getLauncher());
+
+        spec.setLauncher(new CommandLauncher("ssh $NAME"));
+        assertNotSame(launcher, spec.fromVariables().getLauncher());
+    }
+
+    /**
+     * Creates a mocked DumbSlave with some settings.
+     * @param name the name.
+     * @return the mock.
+     */
+    private DumbSlave mockSlave(String name) {
+        NodeProperty<?> property = mock(NodeProperty.class);
+        DescribableList<NodeProperty<?>, NodePropertyDescriptor> properties = mock(DescribableList.class);
+        when(properties.toList()).thenReturn(Collections.<NodeProperty<?>>singletonList(property));
+
+        DumbSlave slave = mock(DumbSlave.class);
+        when(slave.getNodeName()).thenReturn(name);
+        when(slave.getNodeDescription()).thenReturn("description");
+        when(slave.getRemoteFS()).thenReturn("/home/$NAME");
+        when(slave.getNumExecutors()).thenReturn(2);
+        when(slave.getMode()).thenReturn(Node.Mode.EXCLUSIVE);
+        when(slave.getLabelString()).thenReturn("linux");
+        when(slave.getLauncher()).thenReturn(new CommandLauncher("ssh $NAME"));
+        when(slave.getRetentionStrategy()).thenReturn(new RetentionStrategy.Always());
+        when(slave.getNodeProperties()).thenReturn(properties);
+        return slave;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.NodePropertyDescriptor;
+import hudson.util.DescribableList;
+import net.sf.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link PreviewJob} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class, DescribableList.class })
+public class PreviewJobTest {
+
+    private static final long TIMEOUT = 10000;
+
+    /**
+     * Tests {@link PreviewJob#getPreview(int)}.
+     * Only the slaves that the settings would change are listed, with the values before and after,
+     * and the slaves themselves are left as they are.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testPreview() throws Exception {
+        NodeList nodeList = new NodeList();
+        nodeList.add(mockSlave("slave1", "linux"));
+        DumbSlave windowsSlave = mockSlave("slave2", "windows");
+        nodeList.add(windowsSlave);
+        nodeList.add(mockSlave("slave3", "linux"));
+        nodeList.add(Mockito.mock(Node.class));
+        HashMap settings = new HashMap();
+        settings.put("setLabelString", "linux");
+
+        PreviewJob job = new PreviewJob(nodeList, settings);
+        job.start();
+        assertTrue(job.waitFor(TIMEOUT));
+
+        JSONObject preview = job.getPreview(0);
+        assertTrue(preview.getBoolean("finished"));
+        assertEquals(4, preview.getInt("done"));
+        assertEquals(3, preview.getInt("unchanged"));
+        assertEquals(0, preview.getInt("failed"));
+        assertEquals(1, preview.getJSONArray("changedNodes").size());
+        JSONObject changedNode = preview.getJSONArray("changedNodes").getJSONObject(0);
+        assertEquals("slave2", changedNode.getString("name"));
+        assertEquals(1, changedNode.getJSONArray("changes").size());
+        JSONObject change = changedNode.getJSONArray("changes").getJSONObject(0);
+        assertEquals("labels", change.getString("setting"));
+        assertEquals("windows", change.getString("before"));
+        assertEquals("linux", change.getString("after"));
+        assertEquals("windows", windowsSlave.getLabelString());
+    }
+
+    /**
+     * Tests {@link PreviewJob#getPreview(int)}.
+     * The preview page only gets the changed slaves it doesn't already have.
+     * @throws Exception if so.
+     */
+    @Test
+    public void testPreviewOffset() throws Exception {
+        NodeList nodeList = new NodeList();
+        for (int i = 0; i < PreviewJob.BATCH_SIZE * 2; i++) {
+            nodeList.add(mockSlave("slave" + i, "windows"));
+        }
+        HashMap settings = new HashMap();
+        settings.put("addLabelString", "linux");
+
+        PreviewJob job = new PreviewJob(nodeList, settings);
+        job.start();
+        assertTrue(job.waitFor(TIMEOUT));
+
+        assertEquals(PreviewJob.BATCH_SIZE * 2, job.getChanged());
+        JSONObject preview = job.getPreview(PreviewJob.BATCH_SIZE);
+        assertEquals(PreviewJob.BATCH_SIZE, preview.getInt("offset"));
+        assertEquals(PreviewJob.BATCH_SIZE, preview.getJSONArray("changedNodes").size());
+        assertEquals(0, job.getPreview(PreviewJob.BATCH_SIZE * 2).getJSONArray("changedNodes").size());
+    }
+
+    /**
+     * Creates a mocked DumbSlave without node properties.
+     * @param name the name.
+     * @param labels the labels.
+     * @return the mock.
+     */
+    private DumbSlave mockSlave(String name, String labels) {
+        DescribableList<NodeProperty<?>, NodePropertyDescriptor> properties = mock(DescribableList.class);
+        when(properties.toList()).thenReturn(Collections.<NodeProperty<?>>emptyList());
+        DumbSlave slave = mock(DumbSlave.class);
+        when(slave.getNodeName()).thenReturn(name);
+        when(slave.getLabelString()).thenReturn(labels);
+        when(slave.getNumExecutors()).thenReturn(1);
+        when(slave.getNodeProperties()).thenReturn(properties);
+        return slave;
+    }
+}
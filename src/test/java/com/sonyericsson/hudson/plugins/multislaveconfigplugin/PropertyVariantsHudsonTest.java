@@ -0,0 +1,110 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import hudson.slaves.EnvironmentVariablesNodeProperty;
+import hudson.slaves.JNLPLauncher;
+import hudson.slaves.NodeProperty;
+import hudson.slaves.RetentionStrategy;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests {@link PropertyVariants} using HudsonTestCases.
+ */
+public class PropertyVariantsHudsonTest extends HudsonTestCase {
+
+    /**
+     * Tests {@link PropertyVariants#analyze(Iterable)}.
+     * Slaves with equal properties are counted together, the most common value comes first.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testAnalyze() throws Exception {
+        NodeList nodeList = createSlaves();
+        List<PropertyVariants> propertyVariants = nodeList.getPropertyVariants();
+
+        assertEquals(1, propertyVariants.size());
+        PropertyVariants environmentVariables = propertyVariants.get(0);
+        assertEquals(EnvironmentVariablesNodeProperty.DescriptorImpl.class.getName(),
+                environmentVariables.getDescriptorClassName());
+        assertEquals(2, environmentVariables.getVariants().size());
+        assertEquals("3 / 1", environmentVariables.getCounts());
+        assertEquals(1, environmentVariables.getSlavesWithout());
+        assertSame(propertyVariants, nodeList.getPropertyVariants());
+    }
+
+    /**
+     * Tests {@link NodeList#withPropertyVariant(String, String)}.
+     * Only the slaves with the chosen value are kept.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testWithPropertyVariant() throws Exception {
+        NodeList nodeList = createSlaves();
+        PropertyVariants environmentVariables = nodeList.getPropertyVariants().get(0);
+        PropertyVariants.Variant leastCommon = environmentVariables.getVariants().get(1);
+
+        NodeList narrowed = nodeList.withPropertyVariant(environmentVariables.getDescriptorClassName(),
+                leastCommon.getFingerprint());
+        assertEquals(1, narrowed.size());
+        assertEquals("slave3", narrowed.get(0).getNodeName());
+    }
+
+    /**
+     * Creates five slaves, three with one value of environment variables, one with another and one without.
+     * @return the slaves.
+     * @throws Exception if slave creation goes wrong.
+     */
+    private NodeList createSlaves() throws Exception {
+        NodeList nodeList = new NodeList();
+        nodeList.add(createSlave("slave0", "value"));
+        nodeList.add(createSlave("slave1", "value"));
+        nodeList.add(createSlave("slave2", null));
+        nodeList.add(createSlave("slave3", "other value"));
+        nodeList.add(createSlave("slave4", "value"));
+        return nodeList;
+    }
+
+    /**
+     * Creates a DumbSlave.
+     * @param name the name.
+     * @param value the value of an environment variable, or null for a slave without environment variables.
+     * @return the slave.
+     * @throws Exception if slave creation goes wrong.
+     */
+    private DumbSlave createSlave(String name, String value) throws Exception {
+        List<NodeProperty<?>> properties = new ArrayList<NodeProperty<?>>();
+        if (value != null) {
+            properties.add(new EnvironmentVariablesNodeProperty(
+                    new EnvironmentVariablesNodeProperty.Entry("KEY", value)));
+        }
+        return new DumbSlave(name, "", "/home/" + name, "1", Node.Mode.NORMAL, "", new JNLPLauncher(),
+                new RetentionStrategy.Always(), properties);
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import net.sf.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link SearchQuery} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class })
+public class SearchQueryTest {
+
+    private JSONObject searchParameters;
+
+    /**
+     * Creates an empty search.
+     */
+    @Before
+    public void setup() {
+        searchParameters = new JSONObject();
+        searchParameters.put("labels", "");
+        searchParameters.put("remoteFS", "");
+        searchParameters.put("description", "");
+        searchParameters.put("executors", "");
+        searchParameters.put("name", "");
+        searchParameters.put("fullNames", "");
+    }
+
+    /**
+     * Tests {@link SearchQuery#compile(net.sf.json.JSONObject)}.
+     * Empty parameters don't become matchers.
+     */
+    @Test
+    public void testCompileEmpty() {
+        assertTrue(SearchQuery.compile(searchParameters).getMatchers().isEmpty());
+    }
+
+    /**
+     * Tests {@link SearchQuery#compile(net.sf.json.JSONObject)}.
+     * The exact checks are evaluated before the text matchers.
+     */
+    @Test
+    public void testCompileOrder() {
+        searchParameters.put("name", "slave");
+        searchParameters.put("executors", "2");
+        searchParameters.put("fullNames", "slave1 slave2");
+        List<SearchQuery.Matcher> matchers = SearchQuery.compile(searchParameters).getMatchers();
+        assertEquals(3, matchers.size());
+        assertTrue(matchers.get(0) instanceof SearchQuery.ExecutorsMatcher);
+        assertTrue(matchers.get(1) instanceof SearchQuery.FullNamesMatcher);
+        assertTrue(matchers.get(2) instanceof SearchQuery.TextMatcher);
+    }
+
+    /**
+     * Tests {@link SearchQuery#matches(hudson.slaves.DumbSlave)}.
+     */
+    @Test
+    public void testMatches() {
+        DumbSlave slave = mockSlave("build-eu-01", 2);
+        when(slave.getLabelString()).thenReturn("linux gpu");
+        searchParameters.put("labels", "GPU lin");
+        searchParameters.put("executors", "2");
+        assertTrue(SearchQuery.compile(searchParameters).matches(slave));
+
+        searchParameters.put("labels", "GPU docker");
+        assertFalse(SearchQuery.compile(searchParameters).matches(slave));
+    }
+
+    /**
+     * Tests {@link SearchQuery#matches(hudson.slaves.DumbSlave)}.
+     * Every slave is evaluated once per matcher at most, and the pipeline stops at the first rejection.
+     * This keeps a search linear in the number of slaves.
+     */
+    @Test
+    public void testMatchesShortCircuit() {
+        final int nbrOfSlaves = 1000;
+        List<DumbSlave> slaves = new ArrayList<DumbSlave>();
+        for (int i = 0; i < nbrOfSlaves; i++) {
+            slaves.add(mockSlave("slave" + i, 1));
+        }
+        searchParameters.put("executors", "7");
+        searchParameters.put("description", "never evaluated");
+        SearchQuery query = SearchQuery.compile(searchParameters);
+
+        int hits = 0;
+        for (DumbSlave slave : slaves) {
+            if (query.matches(slave)) {
+                hits++;
+            }
+        }
+        assertEquals(0, hits);
+        for (DumbSlave slave : slaves) {
+            verify(slave, times(1)).getNumExecutors();
+            verify(slave, never()).getNodeDescription();
+        }
+    }
+
+    /**
+     * Tests {@link SearchQuery.PatternMatcher}.
+     * Globs match the whole value, regular expressions match anywhere.
+     */
+    @Test
+    public void testMatchesPatterns() {
+        DumbSlave slave = mockSlave("build-eu-01", 1);
+        when(slave.getRemoteFS()).thenReturn("/home/jenkins");
+        searchParameters.put("matchMode", "glob");
+        searchParameters.put("name", "build-*-0?");
+        assertTrue(SearchQuery.compile(searchParameters).matches(slave));
+        searchParameters.put("name", "build-*");
+        searchParameters.put("remoteFS", "jenkins");
+        assertFalse(SearchQuery.compile(searchParameters).matches(slave));
+
+        searchParameters.put("matchMode", "regex");
+        searchParameters.put("name", "eu-\\d+$");
+        assertTrue(SearchQuery.compile(searchParameters).matches(slave));
+        searchParameters.put("name", "eu-(");
+        assertFalse(SearchQuery.compile(searchParameters).matches(slave));
+    }
+
+    /**
+     * Tests {@link SearchQuery.PatternMatcher#getCandidates(NodeSearchIndex)}.
+     * Only the slaves with the parts of a glob between the wildcards are looked at.
+     */
+    @Test
+    public void testPatternCandidates() {
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(mockSlave("build-eu-01", 1));
+        nodes.add(mockSlave("build-us-01", 1));
+        nodes.add(mockSlave("test-eu-01", 1));
+        NodeSearchIndex index = new NodeSearchIndex(nodes);
+        SearchQuery.Deadline deadline = new SearchQuery.Deadline();
+        SearchQuery.PatternMatcher matcher = new SearchQuery.PatternMatcher(NodeSearchIndex.Field.NAME,
+                "build-*eu*", true, deadline);
+        assertArrayEquals(new int[]{0}, matcher.getCandidates(index));
+        matcher = new SearchQuery.PatternMatcher(NodeSearchIndex.Field.NAME, "build-.*", false, deadline);
+        assertNull(matcher.getCandidates(index));
+    }
+
+    /**
+     * Tests {@link SearchQuery.DeadlineCharSequence}.
+     * Matching stops when the deadline has passed.
+     */
+    @Test(expected = SearchQuery.PatternTimeoutException.class)
+    public void testDeadline() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < SearchQuery.DeadlineCharSequence.CHECK_INTERVAL; i++) {
+            value.append('a');
+        }
+        Pattern.compile("(a|aa)+b").matcher(new SearchQuery.DeadlineCharSequence(value.toString(), 0)).find();
+    }
+
+    /**
+     * Tests {@link SearchQuery.Deadline}.
+     * Once one pattern of a query has timed out, no pattern of the query matches.
+     */
+    @Test
+    public void testDeadlineShared() {
+        DumbSlave slave = mockSlave("build-eu-01", 1);
+        when(slave.getRemoteFS()).thenReturn("/home/jenkins");
+        SearchQuery.Deadline deadline = new SearchQuery.Deadline();
+        SearchQuery.PatternMatcher nameMatcher = new SearchQuery.PatternMatcher(NodeSearchIndex.Field.NAME,
+                "build-*", true, deadline);
+        SearchQuery.PatternMatcher remoteFSMatcher = new SearchQuery.PatternMatcher(NodeSearchIndex.Field.REMOTE_FS,
+                "jenkins", false, deadline);
+        assertTrue(nameMatcher.matches(slave));
+        assertTrue(remoteFSMatcher.matches(slave));
+        deadline.expire();
+        assertFalse(nameMatcher.matches(slave));
+        assertFalse(remoteFSMatcher.matches(slave));
+    }
+
+    /**
+     * Tests {@link SearchQuery#isTimedOut()}.
+     * A pattern with catastrophic backtracking gives up, the result is marked as timed out and isn't narrowed.
+     */
+    @Test
+    public void testTimedOut() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < SearchQuery.DeadlineCharSequence.CHECK_INTERVAL; i++) {
+            value.append('a');
+        }
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(mockSlave("slave1", 1));
+        when(((DumbSlave)nodes.get(0)).getRemoteFS()).thenReturn(value.toString());
+        NodeSearchIndex index = new NodeSearchIndex(nodes);
+        searchParameters.put("matchMode", "regex");
+        searchParameters.put("remoteFS", "(a|aa)+b");
+        SearchQuery query = SearchQuery.compile(searchParameters);
+        NodeSet result = query.search(index);
+        assertTrue(query.isTimedOut());
+        assertTrue(result.isTimedOut());
+        assertTrue(result.isEmpty());
+        assertFalse(SearchQuery.compile(searchParameters).narrows(query));
+    }
+
+    /**
+     * Tests {@link SearchQuery#narrows(SearchQuery)}.
+     * Typing more in a field, or filling in another field, narrows the search.
+     */
+    @Test
+    public void testNarrows() {
+        searchParameters.put("labels", "lin");
+        SearchQuery previous = SearchQuery.compile(searchParameters);
+        searchParameters.put("labels", "gpu linux");
+        searchParameters.put("executors", "2");
+        assertTrue(SearchQuery.compile(searchParameters).narrows(previous));
+        assertTrue(SearchQuery.compile(searchParameters).narrows(SearchQuery.compile(new JSONObject())));
+    }
+
+    /**
+     * Tests {@link SearchQuery#narrows(SearchQuery)}.
+     * Removing text, changing the number of executors or adding environment variables doesn't narrow the search.
+     */
+    @Test
+    public void testNarrowsNot() {
+        searchParameters.put("labels", "linux");
+        searchParameters.put("executors", "2");
+        SearchQuery previous = SearchQuery.compile(searchParameters);
+        searchParameters.put("labels", "lin");
+        assertFalse(SearchQuery.compile(searchParameters).narrows(previous));
+        searchParameters.put("labels", "linux");
+        searchParameters.put("executors", "3");
+        assertFalse(SearchQuery.compile(searchParameters).narrows(previous));
+        searchParameters.put("executors", "2");
+        searchParameters.put("labels", "linux-$NAME");
+        assertFalse(SearchQuery.compile(searchParameters).narrows(previous));
+    }
+
+    /**
+     * Tests {@link SearchQuery#filter(NodeSet)}.
+     * Only the slaves in the earlier result are looked at.
+     */
+    @Test
+    public void testFilter() {
+        List<Node> nodes = new ArrayList<Node>();
+        nodes.add(mockSlave("slave1", 1));
+        nodes.add(mockSlave("slave2", 2));
+        nodes.add(mockSlave("slave3", 2));
+        nodes.add(mockSlave("slave4", 2));
+        NodeSearchIndex index = new NodeSearchIndex(nodes);
+        searchParameters.put("executors", "2");
+        NodeSet previous = SearchQuery.compile(searchParameters).search(index);
+        searchParameters.put("fullNames", "slave1 slave2 slave3");
+        NodeList result = SearchQuery.compile(searchParameters).filter(previous).toNodeList();
+        assertEquals(2, result.size());
+        assertEquals("slave2", result.get(0).getNodeName());
+        assertEquals("slave3", result.get(1).getNodeName());
+        //Only when it was indexed.
+        verify((DumbSlave)nodes.get(0), times(1)).getNumExecutors();
+    }
+
+    /**
+     * Creates a mocked DumbSlave.
+     * @param name the name.
+     * @param numExecutors the number of executors.
+     * @return the mock.
+     */
+    private DumbSlave mockSlave(String name, int numExecutors) {
+        DumbSlave slave = PowerMockito.mock(DumbSlave.class);
+        when(slave.getNodeName()).thenReturn(name);
+        when(slave.getNumExecutors()).thenReturn(numExecutors);
+        return slave;
+    }
+}
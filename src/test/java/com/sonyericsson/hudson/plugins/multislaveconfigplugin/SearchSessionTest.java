@@ -0,0 +1,160 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import net.sf.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link SearchSession} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class, Hudson.class })
+public class SearchSessionTest {
+
+    private Hudson hudsonMock;
+    private List<Node> nodes;
+    private DumbSlave linuxSlave;
+    private DumbSlave otherSlave;
+    private SearchSession searchSession;
+
+    /**
+     * Creates a few mocked DumbSlaves.
+     */
+    @Before
+    public void setup() {
+        nodes = new ArrayList<Node>();
+        linuxSlave = mockSlave("slave1", "linux");
+        //Has all the n-grams of "linux", so the index can't rule it out.
+        otherSlave = mockSlave("slave2", "lin inu nux");
+        nodes.add(otherSlave);
+        nodes.add(linuxSlave);
+
+        hudsonMock = mock(Hudson.class);
+        mockStatic(Hudson.class);
+        when(Hudson.getInstance()).thenReturn(hudsonMock);
+        when(hudsonMock.getNodes()).thenReturn(nodes);
+        NodeSearchIndex.invalidate();
+        searchSession = new SearchSession();
+    }
+
+    /**
+     * Tests {@link SearchSession#search(long, net.sf.json.JSONObject)}.
+     * The result is in name order.
+     */
+    @Test
+    public void testSearch() {
+        NodeList result = searchSession.search(1, labels("")).toNodeList();
+        assertEquals(2, result.size());
+        assertEquals("slave1", result.get(0).getNodeName());
+        assertTrue(searchSession.isLatest(1));
+    }
+
+    /**
+     * Tests {@link SearchSession#search(long, net.sf.json.JSONObject)}.
+     * A search that arrives after a later search is dropped.
+     */
+    @Test
+    public void testSearchSuperseded() {
+        assertEquals(1, searchSession.search(2, labels("linux")).size());
+        assertNull(searchSession.search(1, labels("")));
+        assertFalse(searchSession.isLatest(1));
+    }
+
+    /**
+     * Tests {@link SearchSession#search(long, net.sf.json.JSONObject)}.
+     * A search that narrows the previous one only looks at the previous result.
+     */
+    @Test
+    public void testSearchIncremental() {
+        //Once by the index and once by the matcher.
+        assertEquals(1, searchSession.search(1, labels("linu")).size());
+        verify(otherSlave, times(2)).getLabelString();
+        NodeList result = searchSession.search(2, labels("linux")).toNodeList();
+        assertEquals(1, result.size());
+        assertEquals("slave1", result.get(0).getNodeName());
+        //Not looked at again, it wasn't part of the previous result.
+        verify(otherSlave, times(2)).getLabelString();
+    }
+
+    /**
+     * Tests {@link SearchSession#search(long, net.sf.json.JSONObject)}.
+     * The previous result isn't reused when the slaves have changed.
+     */
+    @Test
+    public void testSearchIncrementalChangedNodes() {
+        assertEquals(1, searchSession.search(1, labels("linu")).size());
+        List<Node> changed = new ArrayList<Node>(nodes);
+        changed.add(mockSlave("slave3", "linux"));
+        when(hudsonMock.getNodes()).thenReturn(changed);
+        assertEquals(2, searchSession.search(2, labels("linux")).size());
+    }
+
+    /**
+     * Creates search parameters searching for labels.
+     * @param labels the labels to search for.
+     * @return the search parameters.
+     */
+    private JSONObject labels(String labels) {
+        JSONObject searchParameters = new JSONObject();
+        searchParameters.put("labels", labels);
+        return searchParameters;
+    }
+
+    /**
+     * Creates a mocked DumbSlave.
+     * @param name the name.
+     * @param labels the label string.
+     * @return the mock.
+     */
+    private DumbSlave mockSlave(String name, String labels) {
+        DumbSlave slave = PowerMockito.mock(DumbSlave.class);
+        when(slave.getNodeName()).thenReturn(name);
+        when(slave.getLabelString()).thenReturn(labels);
+        when(slave.getNumExecutors()).thenReturn(1);
+        return slave;
+    }
+}
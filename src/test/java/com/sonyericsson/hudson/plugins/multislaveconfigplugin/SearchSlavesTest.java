@@ -40,9 +40,13 @@ import org.powermock.modules.junit4.PowerMockRunner;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -368,4 +372,49 @@ public class SearchSlavesTest {
         String result = SearchSlaves.makeSearchable(null);
         assertEquals("", result);
     }
+
+    /**
+     * Tests {@link SearchSlaves#getPattern(String, boolean)}.
+     * A glob matches the whole value and ignores case, and compiled patterns are reused.
+     */
+    @Test
+    public void testGetPatternGlob() {
+        Pattern pattern = SearchSlaves.getPattern("build-eu-*-??", true);
+        assertTrue(pattern.matcher("BUILD-eu-lund-01").matches());
+        assertFalse(pattern.matcher("build-eu-lund-001").matches());
+        assertFalse(pattern.matcher("build-eu.-01").matches());
+        assertSame(pattern, SearchSlaves.getPattern("build-eu-*-??", true));
+    }
+
+    /**
+     * Tests {@link SearchSlaves#getPattern(String, boolean)}.
+     * Regular characters in a glob aren't regular expression syntax.
+     */
+    @Test
+    public void testGetPatternGlobQuoted() {
+        assertEquals("\\Qa.b\\E.*\\Q[c]\\E.", SearchSlaves.globToRegex("a.b*[c]?"));
+        assertFalse(SearchSlaves.getPattern("a.b", true).matcher("axb").matches());
+    }
+
+    /**
+     * Tests {@link SearchSlaves#getPattern(String, boolean)}.
+     * Only the most recently used patterns are kept.
+     */
+    @Test
+    public void testGetPatternEvicted() {
+        Pattern pattern = SearchSlaves.getPattern("first.*", false);
+        for (int i = 0; i < SearchSlaves.PATTERN_CACHE_SIZE; i++) {
+            SearchSlaves.getPattern("other" + i, false);
+        }
+        assertNotSame(pattern, SearchSlaves.getPattern("first.*", false));
+    }
+
+    /**
+     * Tests {@link SearchSlaves#getPattern(String, boolean)}.
+     * A regular expression that isn't valid isn't compiled.
+     */
+    @Test(expected = PatternSyntaxException.class)
+    public void testGetPatternInvalid() {
+        SearchSlaves.getPattern("build-(eu", false);
+    }
 }
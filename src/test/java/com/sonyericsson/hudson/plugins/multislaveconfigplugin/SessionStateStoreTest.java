@@ -0,0 +1,128 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link SessionStateStore} using JUnit Tests.
+ */
+public class SessionStateStoreTest {
+
+    private static final long TIME_TO_LIVE = 1000;
+    private static final int MAX_SIZE = 3;
+    private long now;
+    private SessionStateStore store;
+
+    /**
+     * Creates a store with a controllable clock.
+     */
+    @Before
+    public void setup() {
+        now = 0;
+        store = new SessionStateStore(TIME_TO_LIVE, MAX_SIZE) {
+            @Override
+            long currentTime() {
+                return now;
+            }
+        };
+    }
+
+    /**
+     * Tests {@link SessionStateStore#getOrCreate(String)} and {@link SessionStateStore#get(String)}.
+     */
+    @Test
+    public void testGetOrCreate() {
+        assertNull(store.get("session1"));
+        SessionState state = store.getOrCreate("session1");
+        assertSame(state, store.get("session1"));
+        assertSame(state, store.getOrCreate("session1"));
+        assertEquals(1, store.size());
+    }
+
+    /**
+     * Tests {@link SessionStateStore#get(String)}.
+     * A state that hasn't been used for longer than the time to live is gone, one that has been used is kept.
+     */
+    @Test
+    public void testTimeToLive() {
+        store.getOrCreate("session1");
+        store.getOrCreate("session2");
+        now = TIME_TO_LIVE;
+        assertNotNull(store.get("session2"));
+        now = TIME_TO_LIVE + 1;
+        assertNull(store.get("session1"));
+        assertNotNull(store.get("session2"));
+    }
+
+    /**
+     * Tests {@link SessionStateStore#getOrCreate(String)}.
+     * The least recently used states are evicted when there are too many.
+     */
+    @Test
+    public void testLeastRecentlyUsed() {
+        for (int i = 0; i < MAX_SIZE; i++) {
+            now = i;
+            store.getOrCreate("session" + i);
+        }
+        now = MAX_SIZE;
+        store.get("session0");
+        now = MAX_SIZE + 1;
+        store.getOrCreate("new");
+        assertEquals(MAX_SIZE, store.size());
+        assertNotNull(store.get("session0"));
+        assertNull(store.get("session1"));
+        assertNotNull(store.get("new"));
+    }
+
+    /**
+     * Tests {@link SessionStateStore#getOrCreate(javax.servlet.http.HttpSession)}.
+     * The state is removed when the HTTP session is invalidated.
+     */
+    @Test
+    public void testGetOrCreateHttpSession() {
+        HttpSession session = mock(HttpSession.class);
+        when(session.getId()).thenReturn("session1");
+        store.getOrCreate(session);
+        assertEquals(1, store.size());
+        verify(session).setAttribute(eq(SessionStateStore.class.getName()), any(HttpSessionBindingListener.class));
+        store.remove("session1");
+        assertEquals(0, store.size());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link SessionState} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class, Hudson.class })
+public class SessionStateTest {
+
+    private Hudson hudsonMock;
+    private List<Node> nodes;
+    private DumbSlave slave1;
+    private DumbSlave slave2;
+    private SessionState state;
+
+    /**
+     * Registers two mocked DumbSlaves.
+     */
+    @Before
+    public void setup() {
+        slave1 = mockSlave("slave1");
+        slave2 = mockSlave("slave2");
+        nodes = new ArrayList<Node>();
+        nodes.add(slave1);
+        nodes.add(slave2);
+        hudsonMock = mock(Hudson.class);
+        mockStatic(Hudson.class);
+        when(Hudson.getInstance()).thenReturn(hudsonMock);
+        when(hudsonMock.getNodes()).thenReturn(nodes);
+        state = new SessionState(0);
+    }
+
+    /**
+     * Tests {@link SessionState#getNodeList()}.
+     * Registered nodes are looked up by name, so replaced nodes are seen and deleted nodes are left out.
+     */
+    @Test
+    public void testGetNodeListRegistered() {
+        assertNull(state.getNodeList());
+        NodeList nodeList = new NodeList();
+        nodeList.add(slave1);
+        nodeList.add(slave2);
+        state.setNodeList(nodeList);
+
+        DumbSlave replaced = mockSlave("slave1");
+        List<Node> changed = new ArrayList<Node>();
+        changed.add(replaced);
+        when(hudsonMock.getNodes()).thenReturn(changed);
+
+        NodeList resolved = state.getNodeList();
+        assertEquals(1, resolved.size());
+        assertSame(replaced, resolved.get(0));
+        assertTrue(state.hasMissingNodes());
+    }
+
+    /**
+     * Tests {@link SessionState#getNodeList()}.
+     * Nodes that aren't registered, like slaves about to be created, are kept as they are.
+     */
+    @Test
+    public void testGetNodeListDetached() {
+        DumbSlave toCreate = mockSlave("slave3");
+        NodeList nodeList = new NodeList();
+        nodeList.add(toCreate);
+        nodeList.add(slave2);
+        state.setNodeList(nodeList);
+
+        NodeList resolved = state.getNodeList();
+        assertEquals(2, resolved.size());
+        assertSame(toCreate, resolved.get(0));
+        assertSame(slave2, resolved.get(1));
+        assertFalse(state.hasMissingNodes());
+    }
+
+    /**
+     * Tests {@link SessionState#getNodeList()}.
+     * The looked up list is reused until the node list of Jenkins changes.
+     * No copy of the node list of Jenkins is kept to tell when that happens.
+     */
+    @Test
+    public void testGetNodeListCached() {
+        NodeList nodeList = new NodeList();
+        nodeList.add(slave1);
+        state.setNodeList(nodeList);
+
+        NodeList resolved = state.getNodeList();
+        assertSame(resolved, state.getNodeList());
+
+        List<Node> changed = new ArrayList<Node>(nodes);
+        changed.add(mockSlave("slave3"));
+        when(hudsonMock.getNodes()).thenReturn(changed);
+        assertSame(resolved, state.getNodeList());
+        SessionState.nodesChanged();
+        NodeList rebuilt = state.getNodeList();
+        assertNotSame(resolved, rebuilt);
+        assertSame(slave1, rebuilt.get(0));
+    }
+
+    /**
+     * Tests {@link SessionStateStore#clearResolved()}.
+     * The cached lists of all sessions are dropped, so that they don't hold on to nodes.
+     */
+    @Test
+    public void testClearResolved() {
+        SessionStateStore store = new SessionStateStore();
+        SessionState stored = store.getOrCreate("session");
+        NodeList nodeList = new NodeList();
+        nodeList.add(slave1);
+        stored.setNodeList(nodeList);
+        NodeList resolved = stored.getNodeList();
+
+        store.clearResolved();
+        NodeList rebuilt = stored.getNodeList();
+        assertNotSame(resolved, rebuilt);
+        assertSame(slave1, rebuilt.get(0));
+    }
+
+    /**
+     * Tests {@link SessionState#setNodeList(NodeList)}.
+     * An out of date instance of a registered node isn't kept, the registered one is used instead.
+     */
+    @Test
+    public void testSetNodeListStaleInstance() {
+        NodeList nodeList = new NodeList();
+        nodeList.add(mockSlave("slave1"));
+        state.setNodeList(nodeList);
+        assertSame(slave1, state.getNodeList().get(0));
+    }
+
+    /**
+     * Tests {@link SessionState#setDetachedNodeList(NodeList)}.
+     * The nodes are kept after they have been removed from Jenkins.
+     */
+    @Test
+    public void testSetDetachedNodeList() {
+        NodeList nodeList = new NodeList();
+        nodeList.add(slave1);
+        state.setDetachedNodeList(nodeList);
+        when(hudsonMock.getNodes()).thenReturn(new ArrayList<Node>());
+        assertSame(slave1, state.getNodeList().get(0));
+        assertFalse(state.hasMissingNodes());
+    }
+
+    /**
+     * Creates a mocked DumbSlave.
+     * @param name the name.
+     * @return the mock.
+     */
+    private DumbSlave mockSlave(String name) {
+        DumbSlave slave = PowerMockito.mock(DumbSlave.class);
+        when(slave.getNodeName()).thenReturn(name);
+        return slave;
+    }
+}
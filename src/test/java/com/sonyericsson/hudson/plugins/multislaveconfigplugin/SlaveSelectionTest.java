@@ -0,0 +1,207 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+/**
+ * Tests the {@link SlaveSelection} using JUnit Tests.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ DumbSlave.class, Computer.class, Hudson.class })
+public class SlaveSelectionTest {
+
+    private static final int NBR_OF_SLAVES = 250;
+    private static final int PAGE_SIZE = 100;
+    private List<Node> nodes;
+    private SlaveSelection selection;
+
+    /**
+     * Registers mocked DumbSlaves and creates a selection of all of them.
+     */
+    @Before
+    public void setup() {
+        Computer computer = PowerMockito.mock(Computer.class);
+        when(computer.getIcon()).thenReturn("computer.png");
+        when(computer.getIconAltText()).thenReturn("[online]");
+        nodes = new ArrayList<Node>();
+        for (int i = 0; i < NBR_OF_SLAVES; i++) {
+            DumbSlave slave = PowerMockito.mock(DumbSlave.class);
+            when(slave.getNodeName()).thenReturn(String.format("slave%03d", i));
+            when(slave.getComputer()).thenReturn(computer);
+            nodes.add(slave);
+        }
+        Hudson hudsonMock = mock(Hudson.class);
+        mockStatic(Hudson.class);
+        when(Hudson.getInstance()).thenReturn(hudsonMock);
+        when(hudsonMock.getNodes()).thenReturn(nodes);
+        NodeSearchIndex.invalidate();
+        selection = new SlaveSelection(new NodeSet(NodeSearchIndex.getIndex(), all()));
+    }
+
+    /**
+     * All ordinals of the registered slaves.
+     * @return a bit set with all of them.
+     */
+    private static BitSet all() {
+        BitSet all = new BitSet();
+        all.set(0, NBR_OF_SLAVES);
+        return all;
+    }
+
+    /**
+     * Tests {@link SlaveSelection#setSelected(String, boolean)} and
+     * {@link SlaveSelection#setAllSelected(boolean)}.
+     * Everything starts out selected, and selecting all or nothing applies to slaves that were never listed.
+     */
+    @Test
+    public void testSelection() {
+        assertEquals(NBR_OF_SLAVES, selection.getSelectedCount());
+        selection.setSelected("slave200", false);
+        assertFalse(selection.isSelected("slave200"));
+        assertEquals(NBR_OF_SLAVES - 1, selection.getSelectedCount());
+
+        selection.setAllSelected(false);
+        assertEquals(0, selection.getSelectedCount());
+        selection.setSelected("slave200", true);
+        assertEquals(1, selection.getSelectedNodes().size());
+        assertEquals("slave200", selection.getSelectedNodes().get(0).getNodeName());
+    }
+
+    /**
+     * Tests {@link SlaveSelection#invertSelection()}.
+     * Slaves that aren't part of the result can't be selected.
+     */
+    @Test
+    public void testInvertSelection() {
+        selection.setSelected("slave200", false);
+        selection.setSelected("missing", true);
+        selection.invertSelection();
+        assertEquals(1, selection.getSelectedCount());
+        assertTrue(selection.isSelected("slave200"));
+        assertFalse(selection.isSelected("missing"));
+    }
+
+    /**
+     * Tests {@link SlaveSelection#update(java.util.Collection, java.util.Collection)}.
+     * Only the listed slaves are changed.
+     */
+    @Test
+    public void testUpdate() {
+        selection.update(Arrays.asList("slave000", "slave001"), Collections.singletonList("slave001"));
+        assertFalse(selection.isSelected("slave000"));
+        assertTrue(selection.isSelected("slave001"));
+        assertTrue(selection.isSelected("slave002"));
+        assertEquals(NBR_OF_SLAVES - 1, selection.getSelectedCount());
+    }
+
+    /**
+     * Tests {@link SlaveSelection#getPage(int, int)}.
+     * Only the slaves on the page are returned, together with the totals.
+     */
+    @Test
+    public void testGetPage() {
+        selection.setSelected("slave201", false);
+        JSONObject page = selection.getPage(2 * PAGE_SIZE, PAGE_SIZE);
+        assertEquals(NBR_OF_SLAVES, page.getInt("total"));
+        assertEquals(NBR_OF_SLAVES - 1, page.getInt("selected"));
+        assertEquals(2 * PAGE_SIZE, page.getInt("offset"));
+        assertFalse(page.getBoolean("timedOut"));
+        JSONArray slaves = page.getJSONArray("slaves");
+        assertEquals(NBR_OF_SLAVES - 2 * PAGE_SIZE, slaves.size());
+        assertEquals("slave200", slaves.getJSONObject(0).getString("name"));
+        assertTrue(slaves.getJSONObject(0).getBoolean("selected"));
+        assertFalse(slaves.getJSONObject(1).getBoolean("selected"));
+    }
+
+    /**
+     * Tests {@link SlaveSelection#getPage(int, int)}.
+     * An offset past the end gives an empty page.
+     */
+    @Test
+    public void testGetPageOutOfRange() {
+        JSONObject page = selection.getPage(NBR_OF_SLAVES + PAGE_SIZE, PAGE_SIZE);
+        assertEquals(0, page.getJSONArray("slaves").size());
+        assertEquals(NBR_OF_SLAVES, page.getInt("offset"));
+    }
+
+    /**
+     * Tests {@link SlaveSelection#getPage(int, int)}.
+     * The page tells if the search timed out.
+     */
+    @Test
+    public void testGetPageTimedOut() {
+        selection = new SlaveSelection(new NodeSet(NodeSearchIndex.getIndex(), all(), true));
+        assertTrue(selection.isTimedOut());
+        assertTrue(selection.getPage(0, PAGE_SIZE).getBoolean("timedOut"));
+    }
+
+    /**
+     * Tests {@link SlaveSelection#getPage(int, int)} and {@link SlaveSelection#getSelectedNodes()}.
+     * The slaves are found by name in the index of the changed slaves, deleted slaves are left out.
+     */
+    @Test
+    public void testChangedSlaves() {
+        selection.setSelected("slave201", false);
+        long generation = NodeSearchIndex.getIndex().getGeneration();
+        nodes.remove(200);
+
+        JSONObject page = selection.getPage(2 * PAGE_SIZE, PAGE_SIZE);
+        assertTrue(NodeSearchIndex.getIndex().getGeneration() > generation);
+        assertEquals(NBR_OF_SLAVES - 1, page.getInt("total"));
+        JSONArray slaves = page.getJSONArray("slaves");
+        assertEquals("slave201", slaves.getJSONObject(0).getString("name"));
+        assertFalse(slaves.getJSONObject(0).getBoolean("selected"));
+        assertTrue(slaves.getJSONObject(1).getBoolean("selected"));
+
+        NodeList selected = selection.getSelectedNodes();
+        assertEquals(NBR_OF_SLAVES - 2, selected.size());
+        assertEquals("slave202", selected.get(200).getNodeName());
+    }
+}
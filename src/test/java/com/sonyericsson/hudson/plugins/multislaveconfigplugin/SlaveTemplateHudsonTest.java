@@ -0,0 +1,103 @@
+/*
+ *  The MIT License
+ *
+ *  Copyright 2014 Sony Mobile Communications AB. All rights reserved.
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in
+ *  all copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ *  THE SOFTWARE.
+ */
+
+
+package com.sonyericsson.hudson.plugins.multislaveconfigplugin;
+
+import hudson.model.Node;
+import hudson.slaves.DumbSlave;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests {@link SlaveTemplate} using HudsonTestCases.
+ */
+public class SlaveTemplateHudsonTest extends HudsonTestCase {
+
+    private static final int NBR_OF_SLAVES = 101;
+
+    /**
+     * Tests {@link SlaveTemplate#createAll(Iterable)}.
+     * Slaves are created for all names in order, without registering them.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testCreateAllNewSlaves() throws Exception {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < NBR_OF_SLAVES; i++) {
+            names.add(String.format("slave%03d", i));
+        }
+        CreationResult result = SlaveTemplate.newSlave().createAll(names);
+
+        assertTrue(result.isSuccessful());
+        assertEquals(names.size(), result.getCreated().size());
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals(names.get(i), result.getCreated().get(i).getNodeName());
+        }
+        assertTrue(hudson.getNodes().isEmpty());
+    }
+
+    /**
+     * Tests {@link SlaveTemplate#createAll(Iterable)}.
+     * Copies get the settings of the source, with environment variables switched to the values of each copy.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testCreateAllCopies() throws Exception {
+        DumbSlave source = new DumbSlave("source", "", "/home/$NAME", "2", Node.Mode.NORMAL, "linux", null, null,
+                Collections.EMPTY_LIST);
+        CreationResult result = SlaveTemplate.copyOf(source).createAll(Arrays.asList("copy1", "copy2"));
+
+        assertTrue(result.isSuccessful());
+        DumbSlave copy = (DumbSlave)result.getCreated().get(1);
+        assertEquals("copy2", copy.getNodeName());
+        assertEquals("/home/copy2", copy.getRemoteFS());
+        assertEquals(2, copy.getNumExecutors());
+        assertEquals("linux", copy.getLabelString());
+    }
+
+    /**
+     * Tests {@link SlaveTemplate#createAll(Iterable)}.
+     * A slave that can't be created is reported, the others are still created.
+     * @throws Exception if slave creation goes wrong.
+     */
+    public void testCreateAllFailure() throws Exception {
+        SlaveTemplate template = new SlaveTemplate() {
+            @Override
+            protected Node create(String name) {
+                if (name.equals("broken")) {
+                    throw new IllegalStateException("broken");
+                }
+                return SlaveTemplate.newSlave().create(name);
+            }
+        };
+        CreationResult result = template.createAll(Arrays.asList("slave1", "broken", "slave2"));
+
+        assertFalse(result.isSuccessful());
+        assertEquals(2, result.getCreated().size());
+        assertEquals("broken", result.getFailures().get("broken"));
+    }
+}
@@ -800,7 +800,7 @@ public class UIHudsonTest extends HudsonTestCase {
         //Search.
         currentPage = submit(form);
 
-        String currentSessionId = link.userMode.keySet().iterator().next();
+        String currentSessionId = link.getSessionStates().getSessionIds().iterator().next();
 
         assertEquals(1, link.getNodeList(currentSessionId).size());
         assertEquals("slave2", link.getNodeList(currentSessionId).get(0).getNodeName());
@@ -822,7 +822,7 @@ public class UIHudsonTest extends HudsonTestCase {
         //Search.
         currentPage = submit(form);
 
-        String currentSessionId = link.userMode.keySet().iterator().next();
+        String currentSessionId = link.getSessionStates().getSessionIds().iterator().next();
 
         assertEquals(1, link.getNodeList(currentSessionId).size());
         assertEquals("slave2", link.getNodeList(currentSessionId).get(0).getNodeName());
@@ -844,7 +844,7 @@ public class UIHudsonTest extends HudsonTestCase {
         //Search.
         currentPage = submit(form);
 
-        String currentSessionId = link.userMode.keySet().iterator().next();
+        String currentSessionId = link.getSessionStates().getSessionIds().iterator().next();
 
         assertEquals(2, link.getNodeList(currentSessionId).size());
         assertEquals("LABEL1 LABEL3", link.getNodeList(currentSessionId).get(0).getLabelString());
@@ -866,7 +866,7 @@ public class UIHudsonTest extends HudsonTestCase {
         //Search.
         currentPage = submit(form);
 
-        String currentSessionId = link.userMode.keySet().iterator().next();
+        String currentSessionId = link.getSessionStates().getSessionIds().iterator().next();
 
         assertEquals(1, link.getNodeList(currentSessionId).size());
         assertEquals("This is the description on dumbSlave1",
@@ -888,7 +888,7 @@ public class UIHudsonTest extends HudsonTestCase {
         //Search.
         currentPage = submit(form);
 
-        String currentSessionId = link.userMode.keySet().iterator().next();
+        String currentSessionId = link.getSessionStates().getSessionIds().iterator().next();
 
         assertEquals(1, link.getNodeList(currentSessionId).size());
         assertEquals("HOME/slave2", ((DumbSlave)link.getNodeList(currentSessionId).get(0)).getRemoteFS());
@@ -909,7 +909,7 @@ public class UIHudsonTest extends HudsonTestCase {
         //Search.
         currentPage = submit(form);
 
-        String currentSessionId = link.userMode.keySet().iterator().next();
+        String currentSessionId = link.getSessionStates().getSessionIds().iterator().next();
 
         assertEquals(1, link.getNodeList(currentSessionId).size());
         assertEquals(2, (link.getNodeList(currentSessionId).get(0)).getNumExecutors());